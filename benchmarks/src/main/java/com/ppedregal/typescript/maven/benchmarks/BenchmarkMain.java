@@ -0,0 +1,26 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks like JMH's own launcher, but writes the results as
+ * JSON to target/jmh-result.json unless another result format is given.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "-rf");
+            options.add(1, "json");
+            if (!options.contains("-rff")) {
+                options.add("-rff");
+                options.add("target/jmh-result.json");
+            }
+        }
+        Main.main(options.toArray(new String[options.size()]));
+    }
+}
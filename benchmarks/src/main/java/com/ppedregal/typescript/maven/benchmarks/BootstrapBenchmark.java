@@ -0,0 +1,56 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import com.ppedregal.typescript.maven.ScriptClassCache;
+import com.ppedregal.typescript.maven.TscSession;
+import com.ppedregal.typescript.maven.TscSessions;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load the bundled compiler into a new session: evaluating node.js,
+ * filewedge.js and tsc.js, interpreted or from the class cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BootstrapBenchmark {
+
+    @Param({"-1", "9"})
+    public int optimizationLevel;
+
+    @Param({"rhino"})
+    public String engine;
+
+    private File cacheDirectory;
+
+    @Setup
+    public void setUp() throws Exception {
+        cacheDirectory = SyntheticProject.tempDir("tsc-bootstrap-cache");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    @Benchmark
+    public TscSession bootstrap() throws Exception {
+        return TscSessions.create(engine, new ScriptClassCache(cacheDirectory, optimizationLevel));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.ppedregal.typescript.maven.FileSetChangeMonitor;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one polling scan of an unchanged source tree, paid every
+ * <code>pollTime</code> when watching without native file system events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangeMonitorBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int files;
+
+    private File dir;
+    private FileSetChangeMonitor monitor;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = SyntheticProject.tempDir("tsc-monitor");
+        for (int i = 0; i < files; i++) {
+            File file = new File(dir, "d" + (i / 100) + "/f" + i + ".ts");
+            FileUtils.writeStringToFile(file, "export var f" + i + " = " + i + ";\n", "UTF-8");
+        }
+        monitor = new FileSetChangeMonitor(dir, "**/*.ts", 0);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        monitor.close();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public List<String> scan() {
+        return monitor.getModifiedFilesSinceLastTimeIAsked();
+    }
+}
@@ -0,0 +1,83 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.ppedregal.typescript.maven.ScriptClassCache;
+import com.ppedregal.typescript.maven.TscSession;
+import com.ppedregal.typescript.maven.TscSessions;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiles synthetic projects in a warm session: a full compile, and a watch
+ * mode rebuild after one file changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompileBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int files;
+
+    @Param({"rhino"})
+    public String engine;
+
+    @Param({"-1"})
+    public int optimizationLevel;
+
+    private File dir;
+    private File changed;
+    private List<String> args;
+    private TscSession session;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = SyntheticProject.tempDir("tsc-compile");
+        List<File> sources = SyntheticProject.create(new File(dir, "src"), files);
+        changed = sources.get(0);
+        args = new ArrayList<String>();
+        args.add("--module");
+        args.add("commonjs");
+        args.add("--outDir");
+        args.add(new File(dir, "out").getPath());
+        for (File source : sources) {
+            args.add(source.getPath());
+        }
+        session = TscSessions.create(engine, new ScriptClassCache(null, optimizationLevel));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public void compile() throws Exception {
+        session.compile(args, "utf-8");
+    }
+
+    @Benchmark
+    public void recompileOneFile() throws Exception {
+        changed.setLastModified(changed.lastModified() + 1000);
+        session.invalidate(Collections.singletonList(changed));
+        session.compileAffected(args, Collections.singletonList(changed.getPath()), "utf-8");
+    }
+}
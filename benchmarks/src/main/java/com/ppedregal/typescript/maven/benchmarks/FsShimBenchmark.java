@@ -0,0 +1,105 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import com.ppedregal.typescript.maven.ClasspathModuleSourceProvider;
+import com.ppedregal.typescript.maven.TscHost;
+import org.apache.commons.io.FileUtils;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.commonjs.module.RequireBuilder;
+import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of <code>readFileSync</code> and <code>writeFileSync</code> in
+ * modules/fs.js as tsc calls them on Rhino, and of the host methods behind
+ * them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FsShimBenchmark {
+
+    @Param({"1024", "102400", "1048576"})
+    public int size;
+
+    private File dir;
+    private String input;
+    private String output;
+    private String data;
+    private TscHost host;
+    private Context context;
+    private ScriptableObject scope;
+    private Function read;
+    private Function write;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = SyntheticProject.tempDir("tsc-fs");
+        StringBuilder text = new StringBuilder();
+        for (int n = 0; text.length() < size; n++) {
+            text.append("export var value").append(n).append(": number = ").append(n).append(";\n");
+        }
+        data = text.substring(0, size);
+        input = new File(dir, "input.ts").getPath();
+        output = new File(dir, "output.js").getPath();
+        FileUtils.writeStringToFile(new File(input), data, "UTF-8");
+
+        host = new TscHost();
+        context = Context.enter();
+        scope = context.initStandardObjects();
+        ScriptableObject.putProperty(scope, "__host", Context.javaToJS(host, scope));
+        RequireBuilder require = new RequireBuilder();
+        require.setSandboxed(false);
+        require.setModuleScriptProvider(new SoftCachingModuleScriptProvider(new ClasspathModuleSourceProvider()));
+        require.createRequire(context, scope).install(scope);
+        context.evaluateString(scope, "var process = { encoding: 'utf-8' };\n"
+                + "var fs = require('fs');\n"
+                + "function read(path) { return fs.readFileSync(path).toString(); }\n"
+                + "function write(path, data) { fs.writeFileSync(path, data, 'utf8'); }\n", "fs-benchmark.js", 1, null);
+        read = (Function) scope.get("read", scope);
+        write = (Function) scope.get("write", scope);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Context.exit();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public Object readFileSync() {
+        return read.call(context, scope, scope, new Object[] {input});
+    }
+
+    @Benchmark
+    public Object writeFileSync() {
+        return write.call(context, scope, scope, new Object[] {output, data});
+    }
+
+    @Benchmark
+    public String hostReadFile() throws Exception {
+        return host.readFile(input, "utf-8");
+    }
+
+    @Benchmark
+    public void hostWriteFile() throws Exception {
+        host.writeFile(output, data, "utf-8");
+    }
+}
@@ -0,0 +1,54 @@
+package com.ppedregal.typescript.maven.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates TypeScript projects of a given size: modules in chains of ten,
+ * each importing the previous one, with a class and a function apiece.
+ */
+final class SyntheticProject {
+
+    private SyntheticProject() {
+    }
+
+    /**
+     * @return the generated source files
+     */
+    static List<File> create(File dir, int files) throws IOException {
+        FileUtils.deleteDirectory(dir);
+        List<File> sources = new ArrayList<File>();
+        for (int i = 0; i < files; i++) {
+            StringBuilder source = new StringBuilder();
+            if (i % 10 != 0) {
+                source.append("import { Model").append(i - 1).append(" } from \"./m").append(i - 1).append("\";\n\n");
+            }
+            source.append("export class Model").append(i).append(" {\n");
+            source.append("    constructor(public id: number, public name: string) {\n    }\n\n");
+            source.append("    describe(): string {\n");
+            source.append("        return this.name + \"#\" + this.id;\n    }\n}\n\n");
+            source.append("export function create").append(i).append("(count: number): Model").append(i).append("[] {\n");
+            source.append("    var models: Model").append(i).append("[] = [];\n");
+            source.append("    for (var n = 0; n < count; n++) {\n");
+            source.append("        models.push(new Model").append(i).append("(n, \"model\"));\n    }\n");
+            if (i % 10 != 0) {
+                source.append("    new Model").append(i - 1).append("(0, \"previous\").describe();\n");
+            }
+            source.append("    return models;\n}\n");
+            File file = new File(dir, "m" + i + ".ts");
+            FileUtils.writeStringToFile(file, source.toString(), "UTF-8");
+            sources.add(file);
+        }
+        return sources;
+    }
+
+    static File tempDir(String name) throws IOException {
+        File dir = File.createTempFile(name, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+}
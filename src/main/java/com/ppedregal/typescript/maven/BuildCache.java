@@ -0,0 +1,183 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A directory of compile outputs addressed by the key of their
+ * {@link BuildManifest}, which builds on other machines can share.
+ * <p>
+ * Each entry is a single zip file of the outputs, with their paths relative
+ * to the base directory of the module. It is written to a temporary file and
+ * renamed into place, so a build reading the cache, possibly over a network
+ * file system, sees either a complete entry or none. Reading an entry
+ * refreshes its timestamp, and the least recently used entries are deleted
+ * when the cache grows above its size limit.
+ */
+public class BuildCache {
+
+    private static final String SUFFIX = ".zip";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Temporary files older than this were left behind by a crashed build. */
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private final File directory;
+    private final long maxBytes;
+
+    public BuildCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Writes the outputs stored under the key below the base directory,
+     * leaving the files whose content did not change untouched.
+     *
+     * @return the number of files restored, or -1 if there is no such entry
+     * @throws IOException if the entry cannot be read, in which case some
+     *         outputs may already be restored
+     */
+    public int restore(String key, File baseDir) throws IOException {
+        File entry = entry(key);
+        if (!entry.isFile()) {
+            return -1;
+        }
+        int restored = 0;
+        ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(entry)));
+        try {
+            ZipEntry zipEntry;
+            while ((zipEntry = in.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                String name = zipEntry.getName();
+                if (name.startsWith("/") || Arrays.asList(name.split("/")).contains("..")) {
+                    throw new IOException("Invalid path " + name + " in build cache entry " + entry);
+                }
+                write(new File(baseDir, name.replace('/', File.separatorChar)), IOUtils.toByteArray(in));
+                restored++;
+            }
+        } finally {
+            in.close();
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return restored;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        if (file.isFile() && file.length() == bytes.length && Arrays.equals(FileUtils.readFileToByteArray(file), bytes)) {
+            return;
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        FileUtils.writeByteArrayToFile(file, bytes);
+    }
+
+    /**
+     * Stores the outputs under the key, unless an entry already exists, and
+     * evicts the least recently used entries if the cache grew too large.
+     *
+     * @return false if nothing was stored because an output is outside of
+     *         the base directory
+     */
+    public boolean store(String key, File baseDir, Collection<File> outputs) throws IOException {
+        String prefix = baseDir.getAbsolutePath() + File.separator;
+        for (File output : outputs) {
+            if (!output.getAbsolutePath().startsWith(prefix)) {
+                return false;
+            }
+        }
+        File entry = entry(key);
+        if (entry.isFile()) {
+            entry.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+        directory.mkdirs();
+        File tmp = File.createTempFile(key + "-", TEMP_SUFFIX, directory);
+        try {
+            ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                for (File output : outputs) {
+                    String name = output.getAbsolutePath().substring(prefix.length()).replace(File.separatorChar, '/');
+                    out.putNextEntry(new ZipEntry(name));
+                    FileUtils.copyFile(output, out);
+                    out.closeEntry();
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                if (!tmp.renameTo(entry) && !entry.isFile()) {
+                    throw new IOException("Cannot store build cache entry " + entry);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+        evict();
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used entries above the size limit, and the
+     * temporary files of crashed builds. Entries another build deletes at the
+     * same time are simply skipped.
+     */
+    void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<File> entries = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+            } else if (file.getName().endsWith(TEMP_SUFFIX) && now - file.lastModified() > STALE_TEMP_MILLIS) {
+                file.delete();
+            }
+        }
+        // timestamps read once, as other builds may touch entries meanwhile
+        final Map<File, Long> used = new HashMap<File, Long>();
+        for (File entry : entries) {
+            used.put(entry, entry.lastModified());
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return used.get(b).compareTo(used.get(a));
+            }
+        });
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+            if (size > maxBytes) {
+                entry.delete();
+            }
+        }
+    }
+
+    private File entry(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+}
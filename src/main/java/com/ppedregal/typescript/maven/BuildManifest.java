@@ -0,0 +1,250 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What went into and came out of the last successful compile: the content
+ * hash of every input, the effective compiler arguments, the compiler
+ * identity and the outputs written. A build whose manifest equals the
+ * previous one, with all recorded outputs untouched, has nothing to compile.
+ * <p>
+ * Inputs whose length and modification time did not change keep their
+ * previous hash, so checking an unchanged tree reads no file contents.
+ * Declarations of other modules that publish a {@link DeclarationFingerprint}
+ * are recorded as that fingerprint instead.
+ */
+public class BuildManifest {
+
+    private static final String COMPILER = "compiler";
+    private static final String ARGUMENT = "argument";
+    private static final String INPUT = "input";
+    private static final String OUTPUT = "output";
+    private static final String UPSTREAM = "upstream";
+
+    private String compiler = "";
+    private final List<String> arguments = new ArrayList<String>();
+    private final Map<String, Entry> inputs = new TreeMap<String, Entry>();
+    private final Map<String, Entry> outputs = new TreeMap<String, Entry>();
+    private final Map<String, String> upstream = new TreeMap<String, String>();
+
+    public void setCompiler(String compiler) {
+        this.compiler = compiler;
+    }
+
+    public void addArguments(List<String> arguments) {
+        this.arguments.addAll(arguments);
+    }
+
+    /**
+     * Records the content hash of an input, reusing the one in the previous
+     * manifest when the file looks unchanged.
+     */
+    public void addInput(File file, BuildManifest previous) throws IOException {
+        String path = file.getAbsolutePath();
+        Entry entry = new Entry(file.length(), file.lastModified(), null);
+        Entry old = previous != null ? previous.inputs.get(path) : null;
+        if (old != null && old.sameStamp(entry)) {
+            entry.hash = old.hash;
+        } else {
+            entry.hash = Checksums.sha1(file);
+        }
+        inputs.put(path, entry);
+    }
+
+    /**
+     * Records the API fingerprint published by a module this build compiles
+     * against.
+     */
+    public void addUpstream(File fingerprintFile, String fingerprint) {
+        upstream.put(fingerprintFile.getAbsolutePath(), fingerprint);
+    }
+
+    public void addOutput(File file) {
+        if (file.isFile()) {
+            outputs.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), "-"));
+        }
+    }
+
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    /**
+     * @return the outputs recorded so far
+     */
+    public List<File> getOutputs() {
+        List<File> files = new ArrayList<File>();
+        for (String path : outputs.keySet()) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
+    /**
+     * @return the hash of the compiler, arguments, input contents and
+     *         upstream fingerprints, the paths below the base directory
+     *         made relative to it, so a copy of the module elsewhere builds
+     *         with the same key
+     */
+    public String getKey(File baseDir) {
+        String base = baseDir.getAbsolutePath();
+        MessageDigest digest = Checksums.newDigest();
+        Checksums.update(digest, COMPILER + " " + compiler + "\n");
+        for (String argument : arguments) {
+            Checksums.update(digest, ARGUMENT + " " + relativize(argument, base) + "\n");
+        }
+        for (Map.Entry<String, Entry> input : inputs.entrySet()) {
+            Checksums.update(digest, INPUT + " " + input.getValue().hash + " " + relativize(input.getKey(), base) + "\n");
+        }
+        for (Map.Entry<String, String> entry : upstream.entrySet()) {
+            Checksums.update(digest, UPSTREAM + " " + entry.getValue() + " " + relativize(entry.getKey(), base) + "\n");
+        }
+        return Checksums.toHex(digest.digest());
+    }
+
+    private static String relativize(String path, String base) {
+        if (path.equals(base)) {
+            return ".";
+        }
+        return path.startsWith(base + File.separator)
+                ? path.substring(base.length() + 1).replace(File.separatorChar, '/')
+                : path;
+    }
+
+    /**
+     * @return true if this manifest, describing the current build, matches the
+     *         previous one and the previous outputs are still in place
+     */
+    public boolean isUpToDate(BuildManifest previous) {
+        if (previous == null
+                || !compiler.equals(previous.compiler)
+                || !arguments.equals(previous.arguments)
+                || !inputs.keySet().equals(previous.inputs.keySet())
+                || !upstream.equals(previous.upstream)) {
+            return false;
+        }
+        for (Map.Entry<String, Entry> input : inputs.entrySet()) {
+            if (!input.getValue().hash.equals(previous.inputs.get(input.getKey()).hash)) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, Entry> output : previous.outputs.entrySet()) {
+            File file = new File(output.getKey());
+            if (!output.getValue().sameStamp(new Entry(file.length(), file.lastModified(), null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the manifest stored in the file, or null if there is none or it
+     *         cannot be read
+     */
+    public static BuildManifest read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        BuildManifest manifest = new BuildManifest();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ", 2);
+                    if (fields.length < 2) {
+                        continue;
+                    }
+                    if (COMPILER.equals(fields[0])) {
+                        manifest.compiler = fields[1];
+                    } else if (ARGUMENT.equals(fields[0])) {
+                        manifest.arguments.add(fields[1]);
+                    } else if (INPUT.equals(fields[0])) {
+                        manifest.readEntry(fields[1], manifest.inputs);
+                    } else if (OUTPUT.equals(fields[0])) {
+                        manifest.readEntry(fields[1], manifest.outputs);
+                    } else if (UPSTREAM.equals(fields[0])) {
+                        String[] upstream = fields[1].split(" ", 2);
+                        manifest.upstream.put(upstream[1], upstream[0]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return manifest;
+    }
+
+    private void readEntry(String line, Map<String, Entry> entries) {
+        String[] fields = line.split(" ", 4);
+        entries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+    }
+
+    /**
+     * Writes the manifest through a temporary file renamed into place, so an
+     * interrupted build never leaves a manifest that looks up to date.
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+            writer.write(COMPILER + " " + compiler + "\n");
+            for (String argument : arguments) {
+                writer.write(ARGUMENT + " " + argument + "\n");
+            }
+            writeEntries(writer, INPUT, inputs);
+            writeEntries(writer, OUTPUT, outputs);
+            for (Map.Entry<String, String> entry : upstream.entrySet()) {
+                writer.write(UPSTREAM + " " + entry.getValue() + " " + entry.getKey() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot write build manifest " + file);
+        }
+    }
+
+    private static void writeEntries(Writer writer, String kind, Map<String, Entry> entries) throws IOException {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            writer.write(kind + " " + value.hash + " " + value.length + " " + value.lastModified + " " + entry.getKey() + "\n");
+        }
+    }
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        String hash;
+
+        Entry(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean sameStamp(Entry other) {
+            return length == other.length && lastModified == other.lastModified;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ppedregal.typescript.maven;
+
+/**
+ * Cancels the compiles of one watch rebuild. Each rebuild gets a new token
+ * before it may be cancelled, so a cancel arriving before a compile starts
+ * still stops it, and one arriving after the rebuild ended stops nothing.
+ */
+public class CancelToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws TscCancelledException if the token is cancelled
+     */
+    public static void check(CancelToken token) throws TscCancelledException {
+        if (token != null && token.isCancelled()) {
+            throw new TscCancelledException();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.ppedregal.typescript.maven;
+
+import java.util.List;
+
+/**
+ * Reports the files of a source tree that were created, modified or deleted.
+ */
+public interface ChangeMonitor
+{
+    /**
+     * Waits for changes and returns the paths, relative to the base
+     * directory, of the files that changed since the last call. May return an
+     * empty list when nothing changed.
+     */
+    List<String> waitForModifiedFiles() throws InterruptedException;
+
+    /**
+     * Releases any resources held by the monitor.
+     */
+    void close();
+}
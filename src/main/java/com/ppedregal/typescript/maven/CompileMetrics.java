@@ -0,0 +1,194 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Where the time of a mojo execution goes: loading and bootstrapping the
+ * compiler, tsc's own phase timers, and the files read and written through
+ * the host. The counters of parallel compiles add up, so their phase times
+ * can exceed the wall clock time.
+ */
+public class CompileMetrics {
+
+    private long scriptLoadMillis;
+    private long bootstrapMillis;
+    private long programMillis;
+    private long parseMillis;
+    private long bindMillis;
+    private long checkMillis;
+    private long emitMillis;
+    private long ioReadMillis;
+    private long ioWriteMillis;
+    private int compiles;
+    private int filesRead;
+    private long bytesRead;
+    private int filesWritten;
+    private long bytesWritten;
+    private int filesUnchanged;
+
+    public synchronized void addStartup(long scriptLoadMillis, long bootstrapMillis) {
+        this.scriptLoadMillis += scriptLoadMillis;
+        this.bootstrapMillis += bootstrapMillis;
+    }
+
+    public synchronized void add(CompileMetrics other) {
+        CompileMetrics copy;
+        synchronized (other) {
+            copy = other.copy();
+        }
+        scriptLoadMillis += copy.scriptLoadMillis;
+        bootstrapMillis += copy.bootstrapMillis;
+        programMillis += copy.programMillis;
+        parseMillis += copy.parseMillis;
+        bindMillis += copy.bindMillis;
+        checkMillis += copy.checkMillis;
+        emitMillis += copy.emitMillis;
+        ioReadMillis += copy.ioReadMillis;
+        ioWriteMillis += copy.ioWriteMillis;
+        compiles += copy.compiles;
+        filesRead += copy.filesRead;
+        bytesRead += copy.bytesRead;
+        filesWritten += copy.filesWritten;
+        bytesWritten += copy.bytesWritten;
+        filesUnchanged += copy.filesUnchanged;
+    }
+
+    private CompileMetrics copy() {
+        CompileMetrics copy = new CompileMetrics();
+        copy.scriptLoadMillis = scriptLoadMillis;
+        copy.bootstrapMillis = bootstrapMillis;
+        copy.programMillis = programMillis;
+        copy.parseMillis = parseMillis;
+        copy.bindMillis = bindMillis;
+        copy.checkMillis = checkMillis;
+        copy.emitMillis = emitMillis;
+        copy.ioReadMillis = ioReadMillis;
+        copy.ioWriteMillis = ioWriteMillis;
+        copy.compiles = compiles;
+        copy.filesRead = filesRead;
+        copy.bytesRead = bytesRead;
+        copy.filesWritten = filesWritten;
+        copy.bytesWritten = bytesWritten;
+        copy.filesUnchanged = filesUnchanged;
+        return copy;
+    }
+
+    /**
+     * Adds tsc's phase timers after a compile. Program time covers reading,
+     * parsing and resolving the files.
+     */
+    public synchronized void addPhases(long programMillis, long parseMillis, long bindMillis, long checkMillis,
+            long emitMillis, long ioReadMillis, long ioWriteMillis) {
+        this.programMillis += programMillis;
+        this.parseMillis += parseMillis;
+        this.bindMillis += bindMillis;
+        this.checkMillis += checkMillis;
+        this.emitMillis += emitMillis;
+        this.ioReadMillis += ioReadMillis;
+        this.ioWriteMillis += ioWriteMillis;
+        compiles++;
+    }
+
+    public synchronized void fileRead(long bytes) {
+        filesRead++;
+        bytesRead += bytes;
+    }
+
+    public synchronized void fileWritten(long bytes) {
+        filesWritten++;
+        bytesWritten += bytes;
+    }
+
+    /**
+     * Counts an output that was not written because it did not change.
+     */
+    public synchronized void fileUnchanged() {
+        filesUnchanged++;
+    }
+
+    public synchronized int getCompiles() {
+        return compiles;
+    }
+
+    /**
+     * Starts measuring the peak heap usage from now on.
+     */
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the peak usage of the heap memory pools
+     */
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private synchronized Map<String, Long> values(long totalMillis, long peakHeapBytes) {
+        Map<String, Long> values = new LinkedHashMap<String, Long>();
+        values.put("totalMillis", totalMillis);
+        values.put("scriptLoadMillis", scriptLoadMillis);
+        values.put("bootstrapMillis", bootstrapMillis);
+        values.put("programMillis", programMillis);
+        values.put("parseMillis", parseMillis);
+        values.put("bindMillis", bindMillis);
+        values.put("checkMillis", checkMillis);
+        values.put("emitMillis", emitMillis);
+        values.put("ioReadMillis", ioReadMillis);
+        values.put("ioWriteMillis", ioWriteMillis);
+        values.put("compiles", (long) compiles);
+        values.put("filesRead", (long) filesRead);
+        values.put("bytesRead", bytesRead);
+        values.put("filesWritten", (long) filesWritten);
+        values.put("bytesWritten", bytesWritten);
+        values.put("filesUnchanged", (long) filesUnchanged);
+        values.put("peakHeapBytes", peakHeapBytes);
+        return values;
+    }
+
+    public void write(File file, long totalMillis, long peakHeapBytes) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, Long> value : values(totalMillis, peakHeapBytes).entrySet()) {
+            if (json.length() > 2) {
+                json.append(",\n");
+            }
+            json.append("  \"").append(value.getKey()).append("\": ").append(value.getValue());
+        }
+        json.append("\n}\n");
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    public synchronized String summary(long totalMillis, long peakHeapBytes) {
+        return String.format("TypeScript: %s ms total, startup %s ms (scripts %s ms), program %s ms, bind %s ms, "
+                + "check %s ms, emit %s ms, read %s file(s) / %s KB, wrote %s file(s) / %s KB, %s unchanged, "
+                + "peak heap %s MB",
+                totalMillis, scriptLoadMillis + bootstrapMillis, scriptLoadMillis, programMillis, bindMillis,
+                checkMillis, emitMillis, filesRead, bytesRead / 1024, filesWritten, bytesWritten / 1024,
+                filesUnchanged, peakHeapBytes / (1024 * 1024));
+    }
+}
@@ -0,0 +1,155 @@
+package com.ppedregal.typescript.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the changes a {@link ChangeMonitor} reports into compiles of the
+ * latest state of the sources.
+ * <p>
+ * The monitor is read on a thread of its own, so changes keep coming in
+ * while a compile runs. They are only handed out once no new change arrived
+ * for the quiet period, so a burst of saves or a branch switch is compiled
+ * once. A change arriving during a compile cancels it, and the cancelled
+ * changes are compiled again together with the new ones.
+ */
+public class CompileScheduler {
+
+    /**
+     * Decides which changed paths are worth a compile, on the thread reading
+     * the monitor.
+     */
+    public interface Filter {
+        boolean accept(String path);
+    }
+
+    private final ChangeMonitor monitor;
+    private final long quietMillis;
+    private final Filter filter;
+    private final Runnable cancel;
+    private final Set<String> pending = new LinkedHashSet<String>();
+    private long lastChange;
+    private boolean compiling;
+    private boolean cancelled;
+    private RuntimeException failure;
+    private volatile boolean closed;
+    private Thread watcher;
+
+    /**
+     * @param filter selects the paths to compile, or null for all of them
+     * @param cancel cancels the running compile, called on the thread reading
+     *        the monitor
+     */
+    public CompileScheduler(ChangeMonitor monitor, long quietMillis, Filter filter, Runnable cancel) {
+        this.monitor = monitor;
+        this.quietMillis = quietMillis;
+        this.filter = filter;
+        this.cancel = cancel;
+    }
+
+    public void start() {
+        watcher = new Thread("TypeScript watch") {
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        changed(monitor.waitForModifiedFiles());
+                    }
+                } catch (InterruptedException e) {
+                    // closed
+                } catch (RuntimeException e) {
+                    if (!closed) {
+                        failed(e);
+                    }
+                }
+            }
+        };
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void changed(List<String> paths) {
+        boolean cancelRunning;
+        synchronized (this) {
+            int before = pending.size();
+            for (String path : paths) {
+                if (filter == null || filter.accept(path)) {
+                    pending.add(path);
+                }
+            }
+            if (pending.size() == before) {
+                return;
+            }
+            lastChange = System.currentTimeMillis();
+            cancelRunning = compiling && !cancelled;
+            cancelled |= compiling;
+            notifyAll();
+        }
+        if (cancelRunning) {
+            cancel.run();
+        }
+    }
+
+    private synchronized void failed(RuntimeException e) {
+        failure = e;
+        notifyAll();
+    }
+
+    /**
+     * Waits until paths changed and then stayed quiet for the quiet period.
+     *
+     * @return the changed paths, relative to the watched directory
+     */
+    public synchronized List<String> nextChanges() throws InterruptedException {
+        while (true) {
+            if (failure != null) {
+                throw new IllegalStateException("Cannot watch for changes: " + failure, failure);
+            }
+            if (pending.isEmpty()) {
+                wait();
+                continue;
+            }
+            long remaining = lastChange + quietMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                wait(remaining);
+                continue;
+            }
+            List<String> changes = new ArrayList<String>(pending);
+            pending.clear();
+            return changes;
+        }
+    }
+
+    /**
+     * Marks the start of the compile of the last changes; new changes cancel
+     * it from now on.
+     */
+    public synchronized void compiling() {
+        compiling = true;
+        cancelled = false;
+    }
+
+    /**
+     * Marks the end of the compile, handing the changes of a cancelled one
+     * back for the next compile.
+     *
+     * @return true if the compile was cancelled
+     */
+    public synchronized boolean compiled(Collection<String> changes) {
+        compiling = false;
+        if (cancelled) {
+            pending.addAll(changes);
+        }
+        return cancelled;
+    }
+
+    public void close() {
+        closed = true;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        monitor.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The fingerprint of the declaration files a module emits, that is of its
+ * public API. It is published next to them, in a file listing the hash of
+ * each declaration file below the hash of them all.
+ * <p>
+ * A module compiling against these declarations records only the overall
+ * hash in its {@link BuildManifest}, so it stays up to date when the
+ * upstream module changed its implementation but none of its declarations.
+ */
+public final class DeclarationFingerprint {
+
+    public static final String FILE_NAME = "ts-declarations.fingerprint";
+
+    private DeclarationFingerprint() {
+    }
+
+    /**
+     * Writes the fingerprint of declaration files below a directory, leaving
+     * the file untouched if it did not change.
+     *
+     * @return the fingerprint
+     */
+    public static String write(File root, Collection<File> declarations) throws IOException {
+        Map<String, String> hashes = new TreeMap<String, String>();
+        String prefix = root.getAbsolutePath() + File.separator;
+        for (File declaration : declarations) {
+            String path = declaration.getAbsolutePath();
+            if (path.startsWith(prefix)) {
+                hashes.put(path.substring(prefix.length()).replace(File.separatorChar, '/'), Checksums.sha1(declaration));
+            }
+        }
+        StringBuilder listing = new StringBuilder();
+        MessageDigest digest = Checksums.newDigest();
+        for (Map.Entry<String, String> hash : hashes.entrySet()) {
+            String line = hash.getValue() + " " + hash.getKey() + "\n";
+            Checksums.update(digest, line);
+            listing.append(line);
+        }
+        String fingerprint = Checksums.toHex(digest.digest());
+        String content = fingerprint + "\n" + listing;
+
+        File file = new File(root, FILE_NAME);
+        if (!file.isFile() || !content.equals(FileUtils.readFileToString(file, "UTF-8"))) {
+            FileUtils.writeStringToFile(file, content, "UTF-8");
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the fingerprint file of the closest directory above a
+     *         declaration file that lists it, or null if it is not published
+     */
+    public static File find(File declaration) {
+        File file = declaration.getAbsoluteFile();
+        String path = file.getName();
+        for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+            File fingerprint = new File(dir, FILE_NAME);
+            if (fingerprint.isFile()) {
+                List<String> lines = readLines(fingerprint);
+                for (int i = 1; i < lines.size(); i++) {
+                    if (lines.get(i).endsWith(" " + path)) {
+                        return fingerprint;
+                    }
+                }
+            }
+            path = dir.getName() + "/" + path;
+        }
+        return null;
+    }
+
+    /**
+     * @return the fingerprint in the file, or null if it cannot be read
+     */
+    public static String read(File file) {
+        List<String> lines = readLines(file);
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    private static List<String> readLines(File file) {
+        try {
+            return FileUtils.readLines(file, "UTF-8");
+        } catch (IOException e) {
+            return Collections.<String>emptyList();
+        }
+    }
+}
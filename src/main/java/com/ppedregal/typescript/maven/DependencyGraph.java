@@ -0,0 +1,346 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The <code>import</code> and <code>/// &lt;reference&gt;</code> edges between
+ * the TypeScript sources of a directory, used to find which files a change
+ * can affect.
+ * <p>
+ * Files without any top-level <code>import</code> or <code>export</code> are
+ * global scripts that can see each other's declarations without referencing
+ * them, so a change to one of them affects every other global script. The
+ * exports of a <code>module</code> or <code>namespace</code> block do not make
+ * a file a module, so namespaces spread over several files are global
+ * scripts too.
+ */
+public class DependencyGraph {
+
+    private static final Pattern REFERENCE = Pattern.compile(
+            "^\\s*///\\s*<reference\\s+path\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.MULTILINE);
+    private static final Pattern IMPORT = Pattern.compile(
+            "(?:\\bimport\\s+[\\w$]+\\s*=\\s*require\\s*\\(\\s*|\\bfrom\\s+|^\\s*import\\s+)[\"']([^\"']+)[\"']", Pattern.MULTILINE);
+    private static final Pattern IMPORT_ALIAS = Pattern.compile("\\s+[\\w$]+\\s*=\\s*+(?!require\\s*\\()");
+    private static final String[] EXTENSIONS = { ".ts", ".tsx", ".d.ts" };
+
+    private final String encoding;
+    private final Map<File, Set<File>> dependencies = new HashMap<File, Set<File>>();
+    private final Map<File, Set<File>> dependents = new HashMap<File, Set<File>>();
+    private final Set<File> globalScripts = new HashSet<File>();
+
+    public DependencyGraph(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * (Re)reads the imports and references of a source file.
+     */
+    public void update(File file) throws IOException {
+        file = normalize(file);
+        remove(file);
+        String text = FileUtils.readFileToString(file, encoding);
+
+        Set<File> targets = new LinkedHashSet<File>();
+        Matcher reference = REFERENCE.matcher(text);
+        while (reference.find()) {
+            targets.add(normalize(new File(file.getParentFile(), reference.group(1))));
+        }
+        Matcher imported = IMPORT.matcher(text);
+        while (imported.find()) {
+            File target = resolveModule(file, imported.group(1));
+            if (target != null) {
+                targets.add(target);
+            }
+        }
+        if (!isExternalModule(text)) {
+            globalScripts.add(file);
+        }
+
+        dependencies.put(file, targets);
+        for (File target : targets) {
+            Set<File> users = dependents.get(target);
+            if (users == null) {
+                users = new HashSet<File>();
+                dependents.put(target, users);
+            }
+            users.add(file);
+        }
+    }
+
+    /**
+     * Forgets the outgoing edges of a file. Files depending on it keep their
+     * edges, so they are still found as dependents when it comes back.
+     */
+    public void remove(File file) {
+        file = normalize(file);
+        globalScripts.remove(file);
+        Set<File> targets = dependencies.remove(file);
+        if (targets != null) {
+            for (File target : targets) {
+                Set<File> users = dependents.get(target);
+                if (users != null) {
+                    users.remove(file);
+                }
+            }
+        }
+    }
+
+    public boolean isGlobalScript(File file) {
+        return globalScripts.contains(normalize(file));
+    }
+
+    /**
+     * @return the given files and every file that transitively imports or
+     *         references one of them, and every global script if one of
+     *         them is a global script
+     */
+    public Set<File> dependentsOf(Collection<File> files) {
+        Set<File> result = new LinkedHashSet<File>();
+        List<File> pending = new ArrayList<File>();
+        for (File file : files) {
+            pending.add(normalize(file));
+        }
+        while (!pending.isEmpty()) {
+            File file = pending.remove(pending.size() - 1);
+            if (result.add(file)) {
+                Set<File> users = dependents.get(file);
+                if (users != null) {
+                    pending.addAll(users);
+                }
+                if (globalScripts.contains(file)) {
+                    pending.addAll(globalScripts);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the given files and every file they transitively import or
+     *         reference
+     */
+    public Set<File> dependenciesOf(Collection<File> files) {
+        Set<File> result = new LinkedHashSet<File>();
+        List<File> pending = new ArrayList<File>();
+        for (File file : files) {
+            pending.add(normalize(file));
+        }
+        while (!pending.isEmpty()) {
+            File file = pending.remove(pending.size() - 1);
+            if (result.add(file)) {
+                Set<File> targets = dependencies.get(file);
+                if (targets != null) {
+                    pending.addAll(targets);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Partitions files into groups that compile independently: files that
+     * import or reference each other, directly or through other sources,
+     * share a group. Declaration files emit nothing and may be loaded by
+     * several groups, so they do not join groups. Global scripts see the
+     * declarations of every other file, so if there is one, all files form
+     * a single group.
+     *
+     * @return the groups, each in the order of the given files, ordered by
+     *         their first file
+     */
+    public List<List<File>> independentGroups(Collection<File> files) {
+        List<File> originals = new ArrayList<File>(files);
+        List<File> normalized = new ArrayList<File>();
+        for (File file : originals) {
+            file = normalize(file);
+            if (globalScripts.contains(file) && !isDeclaration(file)) {
+                List<List<File>> single = new ArrayList<List<File>>();
+                single.add(originals);
+                return single;
+            }
+            normalized.add(file);
+        }
+        Map<File, File> parents = new HashMap<File, File>();
+        for (Map.Entry<File, Set<File>> entry : dependencies.entrySet()) {
+            if (isDeclaration(entry.getKey())) {
+                continue;
+            }
+            for (File target : entry.getValue()) {
+                if (!isDeclaration(target)) {
+                    union(parents, entry.getKey(), target);
+                }
+            }
+        }
+        Map<File, List<File>> groups = new LinkedHashMap<File, List<File>>();
+        for (int i = 0; i < normalized.size(); i++) {
+            File root = find(parents, normalized.get(i));
+            List<File> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<File>();
+                groups.put(root, group);
+            }
+            group.add(originals.get(i));
+        }
+        return new ArrayList<List<File>>(groups.values());
+    }
+
+    private static void union(Map<File, File> parents, File a, File b) {
+        File rootA = find(parents, a);
+        File rootB = find(parents, b);
+        if (!rootA.equals(rootB)) {
+            parents.put(rootA, rootB);
+        }
+    }
+
+    private static File find(Map<File, File> parents, File file) {
+        File root = file;
+        while (parents.containsKey(root)) {
+            root = parents.get(root);
+        }
+        while (!file.equals(root)) {
+            File parent = parents.get(file);
+            parents.put(file, root);
+            file = parent;
+        }
+        return root;
+    }
+
+    /**
+     * Tells modules from global scripts like tsc: a file is a module if one
+     * of its top-level statements imports or exports. Comments, strings and
+     * anything inside braces, such as the exports of a namespace, are
+     * skipped, and neither <code>import x = A.B</code> aliases nor
+     * <code>import()</code> calls count.
+     */
+    static boolean isExternalModule(String text) {
+        int depth = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+            if (c == '/' && next == '/') {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && next == '*') {
+                int end = text.indexOf("*/", i + 2);
+                i = end < 0 ? text.length() : end + 2;
+            } else if (c == '"' || c == '\'' || c == '`') {
+                i = skipString(text, i);
+            } else if (c == '{') {
+                depth++;
+                i++;
+            } else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < text.length() && Character.isJavaIdentifierPart(text.charAt(end))) {
+                    end++;
+                }
+                if (depth == 0 && (i == 0 || text.charAt(i - 1) != '.')) {
+                    String word = text.substring(i, end);
+                    if (word.equals("export")) {
+                        return true;
+                    }
+                    if (word.equals("import") && !isImportExpressionOrAlias(text, end)) {
+                        return true;
+                    }
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isImportExpressionOrAlias(String text, int end) {
+        int i = end;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        if (i < text.length() && (text.charAt(i) == '(' || text.charAt(i) == '.')) {
+            return true;
+        }
+        Matcher alias = IMPORT_ALIAS.matcher(text);
+        alias.region(end, text.length());
+        return alias.lookingAt();
+    }
+
+    /**
+     * @return the index after the string, or template literal with its
+     *         substitutions, starting at the given quote
+     */
+    private static int skipString(String text, int start) {
+        char quote = text.charAt(start);
+        int i = start + 1;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (quote == '`' && c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                int depth = 0;
+                do {
+                    char d = text.charAt(i);
+                    if (d == '{') {
+                        depth++;
+                    } else if (d == '}') {
+                        depth--;
+                    }
+                    i++;
+                } while (depth > 0 && i < text.length());
+            } else if (quote != '`' && c == '\n') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return text.length();
+    }
+
+    static boolean isDeclaration(File file) {
+        return file.getName().endsWith(".d.ts");
+    }
+
+    /**
+     * Resolves relative module names next to the importing file, and other
+     * names like tsc's classic resolution, walking up the parent directories.
+     */
+    private static File resolveModule(File from, String moduleName) {
+        boolean relative = moduleName.startsWith("./") || moduleName.startsWith("../");
+        File dir = from.getParentFile();
+        while (dir != null) {
+            for (String extension : EXTENSIONS) {
+                File candidate = new File(dir, moduleName + extension);
+                if (candidate.isFile()) {
+                    return normalize(candidate);
+                }
+            }
+            if (relative) {
+                return null;
+            }
+            dir = dir.getParentFile();
+        }
+        return null;
+    }
+
+    private static File normalize(File file) {
+        return new File(file.getAbsoluteFile().toURI().normalize());
+    }
+}
@@ -0,0 +1,92 @@
+package com.ppedregal.typescript.maven;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiler message in tsc's output format,
+ * <code>file(line,column): error TS1234: message</code>, or without the
+ * location for global messages.
+ */
+public class Diagnostic {
+
+    private static final Pattern FORMAT = Pattern.compile(
+            "^(?:(.+)\\((\\d+),(\\d+)\\): )?(error|warning|message) TS(\\d+): (.*)$");
+
+    private final String file;
+    private final int line;
+    private final int column;
+    private final String category;
+    private final int code;
+    private String message;
+
+    public Diagnostic(String file, int line, int column, String category, int code, String message) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.category = category;
+        this.code = code;
+        this.message = message;
+    }
+
+    /**
+     * @return the diagnostic printed on the line, or null if it is not one
+     */
+    public static Diagnostic parse(String text) {
+        Matcher matcher = FORMAT.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        if (matcher.group(1) == null) {
+            return new Diagnostic(null, 0, 0, matcher.group(4), Integer.parseInt(matcher.group(5)), matcher.group(6));
+        }
+        return new Diagnostic(matcher.group(1), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)),
+                matcher.group(4), Integer.parseInt(matcher.group(5)), matcher.group(6));
+    }
+
+    /**
+     * @return the source file, or null for a global diagnostic
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return "error", "warning" or "message"
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    public boolean isError() {
+        return "error".equals(category);
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Adds an indented line of a message chain.
+     */
+    void appendMessage(String text) {
+        message = message + "\n" + text;
+    }
+
+    public String toString() {
+        String text = category + " TS" + code + ": " + message;
+        return file == null ? text : file + "(" + line + "," + column + "): " + text;
+    }
+}
@@ -0,0 +1,233 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects the output of a compile into {@link Diagnostic}s. Only the first
+ * <code>limit</code> diagnostics and other lines are kept, the rest is only
+ * counted, so a compile with thousands of errors costs neither memory nor
+ * seconds of logging. Lines may be added from several threads.
+ * <p>
+ * The built-in compiler reports its diagnostics here directly, and stops
+ * checking once it found <code>maxErrors</code> errors.
+ */
+public class DiagnosticCollector {
+
+    private final int limit;
+    private final int maxErrors;
+    private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+    private final List<String> otherLines = new ArrayList<String>();
+    private final Set<String> files = new HashSet<String>();
+    private Diagnostic last;
+    private boolean lastDropped;
+    private int errors;
+    private int warnings;
+    private int dropped;
+    private boolean stopped;
+
+    /**
+     * @param limit how many diagnostics and other lines to keep
+     */
+    public DiagnosticCollector(int limit) {
+        this(limit, 0);
+    }
+
+    /**
+     * @param limit how many diagnostics and other lines to keep
+     * @param maxErrors how many errors the compiler may report before it
+     *        stops, or 0 for no limit
+     */
+    public DiagnosticCollector(int limit, int maxErrors) {
+        this.limit = limit;
+        this.maxErrors = maxErrors;
+    }
+
+    public synchronized void addLine(String line) {
+        if (line.length() == 0) {
+            return;
+        }
+        Diagnostic diagnostic = Diagnostic.parse(line);
+        if (diagnostic != null) {
+            add(diagnostic);
+        } else if (line.startsWith(" ") && (last != null || lastDropped)) {
+            if (last != null) {
+                last.appendMessage(line);
+            }
+        } else {
+            last = null;
+            lastDropped = false;
+            addOther(line);
+        }
+    }
+
+    private void addOther(String line) {
+        if (otherLines.size() < limit) {
+            otherLines.add(line);
+        } else {
+            dropped++;
+        }
+    }
+
+    public synchronized void add(Diagnostic diagnostic) {
+        if (diagnostic.isError()) {
+            errors++;
+        } else if ("warning".equals(diagnostic.getCategory())) {
+            warnings++;
+        }
+        if (diagnostic.getFile() != null) {
+            files.add(diagnostic.getFile());
+        }
+        if (diagnostics.size() < limit) {
+            diagnostics.add(diagnostic);
+            last = diagnostic;
+            lastDropped = false;
+        } else {
+            last = null;
+            lastDropped = true;
+            dropped++;
+        }
+    }
+
+    /**
+     * Adds what another collector collected, as if it had been added here
+     * after the lines already collected.
+     */
+    public synchronized void addAll(DiagnosticCollector other) {
+        synchronized (other) {
+            int keptErrors = 0;
+            int keptWarnings = 0;
+            for (String line : other.otherLines) {
+                addOther(line);
+            }
+            for (Diagnostic diagnostic : other.diagnostics) {
+                add(diagnostic);
+                if (diagnostic.isError()) {
+                    keptErrors++;
+                } else if ("warning".equals(diagnostic.getCategory())) {
+                    keptWarnings++;
+                }
+            }
+            // the other one only counted the rest
+            errors += other.errors - keptErrors;
+            warnings += other.warnings - keptWarnings;
+            dropped += other.dropped;
+            files.addAll(other.files);
+            stopped |= other.stopped;
+            last = null;
+            lastDropped = false;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Records that the compiler stopped at the error limit.
+     */
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Reads a stream to its end on a new thread.
+     *
+     * @return the thread, to join once the process exited
+     */
+    public Thread drain(final InputStream stream) {
+        Thread thread = new Thread("tsc output") {
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        addLine(line);
+                    }
+                } catch (IOException e) {
+                    addLine("Cannot read tsc output: " + e.getMessage());
+                } finally {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public synchronized List<Diagnostic> getDiagnostics() {
+        return new ArrayList<Diagnostic>(diagnostics);
+    }
+
+    public synchronized int getErrorCount() {
+        return errors;
+    }
+
+    public synchronized int getWarningCount() {
+        return warnings;
+    }
+
+    /**
+     * @return a one line summary, or null if nothing was reported
+     */
+    public synchronized String getSummary() {
+        if (errors == 0 && warnings == 0) {
+            return null;
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%s error(s) and %s warning(s) in %s file(s)", errors, warnings, files.size()));
+        if (dropped > 0) {
+            summary.append(String.format(", %s more line(s) not shown", dropped));
+        }
+        if (stopped) {
+            summary.append(String.format(", checking stopped at the limit of %s error(s)", maxErrors));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Logs the kept lines and diagnostics followed by the summary.
+     */
+    public synchronized void log(Log log) {
+        for (String line : otherLines) {
+            log.info(line);
+        }
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.isError()) {
+                log.error(diagnostic.toString());
+            } else if ("warning".equals(diagnostic.getCategory())) {
+                log.warn(diagnostic.toString());
+            } else {
+                log.info(diagnostic.toString());
+            }
+        }
+        String summary = getSummary();
+        if (summary != null) {
+            if (errors > 0) {
+                log.error(summary);
+            } else {
+                log.warn(summary);
+            }
+        }
+    }
+}
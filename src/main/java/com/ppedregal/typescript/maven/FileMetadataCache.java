@@ -0,0 +1,183 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the existence, type, stamp and listing of the paths the compiler
+ * asks about, so module and reference resolution probing the same paths
+ * over and over costs one file system call per path.
+ * <p>
+ * The cache is cleared before each compile, except for the entries below the
+ * retained directories, whose changes the caller reports with
+ * {@link #invalidate(File)}. Only directories and <code>.ts</code> files are
+ * retained, the files a watch reports.
+ * <p>
+ * A stamp is the modification time and length of a file. A file modified
+ * again within the resolution of the file system's timestamps, keeping its
+ * length, would keep its stamp, so the stamps of files modified shortly
+ * before they were looked at also hold a hash of their content.
+ */
+public class FileMetadataCache {
+
+    /** Coarser than the timestamps of common file systems, FAT's 2 seconds. */
+    private static final long RACY_MILLIS = 2000;
+    private static final Metadata MISSING = new Metadata(false, false, 0, 0, 0);
+
+    private final Map<String, Metadata> entries = new HashMap<String, Metadata>();
+    private final Map<String, String[]> listings = new HashMap<String, String[]>();
+    private final List<String> retainedDirectories = new ArrayList<String>();
+
+    public boolean exists(File file) {
+        return get(file) != MISSING;
+    }
+
+    public boolean isFile(File file) {
+        return get(file).file;
+    }
+
+    public boolean isDirectory(File file) {
+        return get(file).directory;
+    }
+
+    /**
+     * @return a value that changes whenever the file is modified
+     */
+    public String stamp(File file) {
+        Metadata metadata = get(file);
+        String stamp = metadata.lastModified + ":" + metadata.length;
+        if (metadata.file && metadata.checked - metadata.lastModified < RACY_MILLIS) {
+            try {
+                stamp += ":" + Checksums.sha1(file);
+            } catch (IOException e) {
+                // gone meanwhile, the compiler reports it when reading it
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * @return the names in the directory, or null if it is not a directory
+     */
+    public String[] list(File dir) {
+        String key = key(dir);
+        if (listings.containsKey(key)) {
+            return listings.get(key);
+        }
+        String[] names = dir.list();
+        listings.put(key, names);
+        return names;
+    }
+
+    private Metadata get(File file) {
+        String key = key(file);
+        Metadata metadata = entries.get(key);
+        if (metadata == null) {
+            long checked = System.currentTimeMillis();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                metadata = new Metadata(attributes.isRegularFile(), attributes.isDirectory(),
+                        attributes.lastModifiedTime().toMillis(), attributes.size(), checked);
+            } catch (IOException e) {
+                metadata = MISSING;
+            }
+            entries.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Keeps the entries below the directory across compiles from now on, or
+     * stops keeping any if null.
+     */
+    public void retain(File dir) {
+        if (dir == null) {
+            retainedDirectories.clear();
+        }
+        clear();
+        if (dir != null) {
+            retainedDirectories.add(key(dir) + File.separator);
+        }
+    }
+
+    /**
+     * Forgets everything except the retained entries.
+     */
+    public void clear() {
+        for (Iterator<Map.Entry<String, Metadata>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Metadata> entry = it.next();
+            if (!isRetained(entry.getKey(), entry.getValue().directory)) {
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = listings.keySet().iterator(); it.hasNext();) {
+            if (!isRetained(it.next(), true)) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isRetained(String key, boolean directory) {
+        if (!directory && !key.endsWith(".ts")) {
+            return false;
+        }
+        for (String retained : retainedDirectories) {
+            if (key.startsWith(retained) || (key + File.separator).equals(retained)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets a created, modified or deleted path, whatever was known below
+     * it, and the metadata and listings of its parent directories.
+     */
+    public void invalidate(File file) {
+        String key = key(file);
+        String prefix = key + File.separator;
+        entries.remove(key);
+        listings.remove(key);
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        for (Iterator<String> it = listings.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        for (File parent = new File(key).getParentFile(); parent != null; parent = parent.getParentFile()) {
+            entries.remove(parent.getPath());
+            listings.remove(parent.getPath());
+        }
+    }
+
+    private static String key(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static class Metadata {
+        final boolean file;
+        final boolean directory;
+        final long lastModified;
+        final long length;
+        final long checked;
+
+        Metadata(boolean file, boolean directory, long lastModified, long length, long checked) {
+            this.file = file;
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checked = checked;
+        }
+    }
+}
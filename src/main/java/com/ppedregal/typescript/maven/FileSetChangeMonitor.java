@@ -3,22 +3,36 @@ package com.ppedregal.typescript.maven;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.plexus.util.DirectoryScanner;
 
-public class FileSetChangeMonitor
+/**
+ * Polls a file set for changes, scanning the whole tree every
+ * <code>pollTime</code> millis. Used when the platform has no native file
+ * system events.
+ */
+public class FileSetChangeMonitor implements ChangeMonitor
 {
     private DirectoryScanner scanner = new DirectoryScanner();
     
     private File baseDir;
     
+    private long pollTime;
+    
     private Map<String, File> fileCache = new HashMap<String, File>();
     private Map<String, Long> fileTimestamps = new HashMap<String, Long>();
     
     public FileSetChangeMonitor(File baseDir, String includePattern) {
+        this(baseDir, includePattern, 100);
+    }
+    
+    public FileSetChangeMonitor(File baseDir, String includePattern, long pollTime) {
         this.baseDir = baseDir;
+        this.pollTime = pollTime;
         
         scanner.setBasedir( baseDir );
         scanner.setIncludes(new String[] {  includePattern } );
@@ -28,8 +42,17 @@ public class FileSetChangeMonitor
         }
     }
     
+    public List<String> waitForModifiedFiles() throws InterruptedException {
+        Thread.sleep( pollTime );
+        return getModifiedFilesSinceLastTimeIAsked();
+    }
+    
+    public void close() {
+    }
+    
     public List<String> getModifiedFilesSinceLastTimeIAsked() {
         List<String> modified = new ArrayList<String>();
+        Set<String> deleted = new HashSet<String>( fileTimestamps.keySet() );
         
         for(String path : getPaths()) {
             if(hasBeenChangedSinceLastTimeIChecked(path)) {
@@ -37,6 +60,13 @@ public class FileSetChangeMonitor
             }
 
             rememberLastModifiedFor(path);
+            deleted.remove( path );
+        }
+        
+        for(String path : deleted) {
+            modified.add( path );
+            fileTimestamps.remove( path );
+            fileCache.remove( path );
         }
         
         return modified;
@@ -0,0 +1,47 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Sends what the compiler prints to the Maven log line by line, instead of
+ * to the console, which modules built in parallel share. Expects UTF-8.
+ */
+public class LogOutputStream extends OutputStream {
+
+    private final Log log;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    public LogOutputStream(Log log) {
+        this.log = log;
+    }
+
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            logLine();
+        } else if (b != '\r') {
+            line.write(b);
+        }
+    }
+
+    public synchronized void flush() {
+        if (line.size() > 0) {
+            logLine();
+        }
+    }
+
+    public void close() {
+        flush();
+    }
+
+    private void logLine() {
+        try {
+            log.info(line.toString("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        line.reset();
+    }
+}
@@ -0,0 +1,175 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A few threads writing the files the compilers emit, so a compile goes on
+ * checking and emitting while its outputs reach the disk. The sessions of a
+ * build share it and each waits for its own writes at the end of a compile.
+ * <p>
+ * Each thread takes all queued writes at once, up to a batch, and writes
+ * them in a row. The writes create the directories of the outputs, which
+ * are remembered, so each is checked and created once. The queue is bounded: once it is
+ * full, the compiler thread writes the next file itself, so a compile
+ * emitting faster than the disk takes the files never holds more than a few
+ * dozen outputs in memory.
+ */
+public class OutputWriter {
+
+    private static final int QUEUE_PER_THREAD = 32;
+    private static final int BATCH = 16;
+
+    private final BlockingQueue<FutureTask<Void>> queue;
+    private final Set<File> directories = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private volatile boolean shutdown;
+
+    public OutputWriter(int threads) {
+        queue = new ArrayBlockingQueue<FutureTask<Void>>(threads * QUEUE_PER_THREAD);
+        for (int i = 1; i <= threads; i++) {
+            Thread thread = new Thread("TypeScript output writer " + i) {
+                public void run() {
+                    drain();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void drain() {
+        List<FutureTask<Void>> batch = new ArrayList<FutureTask<Void>>(BATCH);
+        try {
+            while (!shutdown || !queue.isEmpty()) {
+                FutureTask<Void> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH - 1);
+                for (FutureTask<Void> write : batch) {
+                    write.run();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Queues a file, or writes it on the calling thread if the queue is full
+     * or the writer shut down. Its directory is created if missing.
+     *
+     * @return the pending write, failing with the exception of the write
+     */
+    public Future<Void> write(final File file, final byte[] bytes, final CompileMetrics metrics) {
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() throws IOException {
+                try {
+                    mkdirs(file.getAbsoluteFile().getParentFile());
+                    try {
+                        store(file, bytes, metrics);
+                    } catch (NoSuchFileException e) {
+                        // deleted since it was created, by a clean in watch mode
+                        directories.remove(file.getAbsoluteFile().getParentFile());
+                        mkdirs(file.getAbsoluteFile().getParentFile());
+                        store(file, bytes, metrics);
+                    }
+                } catch (IOException e) {
+                    throw new IOException("Cannot write " + file + ": " + e.getMessage(), e);
+                }
+                return null;
+            }
+        });
+        if (shutdown || !queue.offer(task) || shutdown && queue.remove(task)) {
+            task.run();
+        }
+        return task;
+    }
+
+    private void mkdirs(File dir) throws IOException {
+        if (dir == null || directories.contains(dir)) {
+            return;
+        }
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("cannot create directory " + dir);
+        }
+        directories.add(dir);
+    }
+
+    /**
+     * Hands the bytes to the channel in a single write, unless the file
+     * already holds exactly these bytes. Unchanged outputs keep their
+     * timestamp, so the plugins packaging them have nothing to redo.
+     *
+     * @param metrics counts the file, or null
+     * @return false if the file already held the bytes
+     */
+    static boolean store(File file, byte[] bytes, CompileMetrics metrics) throws IOException {
+        if (hasContent(file, bytes)) {
+            if (metrics != null) {
+                metrics.fileUnchanged();
+            }
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+        if (metrics != null) {
+            metrics.fileWritten(buffer.limit());
+        }
+        return true;
+    }
+
+    /**
+     * Compares the lengths first, so only a file that may be unchanged is
+     * read.
+     */
+    private static boolean hasContent(File file, byte[] bytes) throws IOException {
+        if (file.length() != bytes.length || !file.isFile()) {
+            return false;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer existing = ByteBuffer.allocate(bytes.length);
+            while (existing.hasRemaining() && channel.read(existing) >= 0) {
+                // read it all
+            }
+            return !existing.hasRemaining() && channel.read(ByteBuffer.allocate(1)) < 0
+                    && Arrays.equals(existing.array(), bytes);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stops the threads once the writes already queued are done.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+}
@@ -0,0 +1,265 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.commonjs.module.RequireBuilder;
+import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
+
+/**
+ * A warm TypeScript compiler living in a Rhino scope.
+ * <p>
+ * node.js, filewedge.js and tsc.js are evaluated once when the session is
+ * created, and the initialized <code>ts</code> namespace is kept around.
+ * Every later compile calls <code>__tscCompile</code>, which hands the new
+ * arguments to <code>ts.executeCommandLine</code>, so only the real
+ * parse/check/emit work is paid per compile. When interpreting with a cache
+ * directory, the initialized scope is also kept on disk as a
+ * {@link ScopeSnapshot}, which later sessions restore instead.
+ */
+public class RhinoTscSession implements TscSession {
+
+    /** Instructions between two checks for a cancelled compile. */
+    private static final int CANCEL_CHECK_INSTRUCTIONS = 100000;
+
+    private final TscHost host = new TscHost();
+    private final CompileMetrics startup = new CompileMetrics();
+    private final ScriptableObject globalScope;
+    private volatile CancelToken cancelToken;
+    /** Set while a cancelled compile is cleaned up, which must not be cancelled. */
+    private boolean discarding;
+
+    /**
+     * Makes the interpreter check the cancel token every so many
+     * instructions. Compiled scripts are not counted, so they complete.
+     */
+    private final ContextFactory contextFactory = new ContextFactory() {
+        @Override
+        protected Context makeContext() {
+            Context ctx = super.makeContext();
+            ctx.setInstructionObserverThreshold(CANCEL_CHECK_INSTRUCTIONS);
+            return ctx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context ctx, int instructionCount) {
+            CancelToken token = cancelToken;
+            if (token != null && token.isCancelled() && !discarding) {
+                throw new Cancellation();
+            }
+        }
+    };
+
+    public RhinoTscSession() throws IOException, TscInvocationException {
+        this(new ScriptClassCache(null, -1));
+    }
+
+    /**
+     * @param scripts loads the bundled scripts, interpreted or compiled to classes
+     */
+    public RhinoTscSession(ScriptClassCache scripts) throws IOException, TscInvocationException {
+        try {
+            Context ctx = Context.enter();
+            ctx.setOptimizationLevel(scripts.getOptimizationLevel());
+            globalScope = ctx.initStandardObjects();
+            ScriptableObject.putProperty(globalScope, "__host", Context.javaToJS(host, globalScope));
+            RequireBuilder require = new RequireBuilder();
+            require.setSandboxed(false);
+            require.setModuleScriptProvider(new SoftCachingModuleScriptProvider(new ClasspathModuleSourceProvider()));
+            require.createRequire(ctx, globalScope).install(globalScope);
+
+            long start = System.currentTimeMillis();
+            ScopeSnapshot snapshot = scripts.getOptimizationLevel() < 0 && scripts.getCacheDirectory() != null
+                    ? new ScopeSnapshot(scripts.getCacheDirectory(), ctx, scripts.getLog())
+                    : null;
+            if (snapshot != null && snapshot.restore(globalScope)) {
+                startup.addStartup(System.currentTimeMillis() - start, 0);
+                return;
+            }
+            Script nodeScript = scripts.load(ctx, "node.js");
+            Script fileWedgeScript = scripts.load(ctx, "filewedge.js");
+            Script tscScript = scripts.load(ctx, "tsc.js");
+            Script sourceCacheScript = scripts.load(ctx, "sourcecache.js");
+            Script transpileScript = scripts.load(ctx, "transpile.js");
+            long loaded = System.currentTimeMillis();
+
+            nodeScript.exec(ctx, globalScope);
+            fileWedgeScript.exec(ctx, globalScope);
+            bootstrap(ctx, tscScript);
+            sourceCacheScript.exec(ctx, globalScope);
+            transpileScript.exec(ctx, globalScope);
+            startup.addStartup(loaded - start, System.currentTimeMillis() - loaded);
+            if (snapshot != null) {
+                snapshot.store(ctx, globalScope);
+            }
+        } catch (RhinoException e) {
+            throw new TscInvocationException("Rhino Error while loading the TypeScript compiler", e);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Runs tsc.js once with <code>--version</code> so that its top-level code
+     * defines the <code>ts</code> namespace without compiling anything. The
+     * version banner is swallowed.
+     */
+    private void bootstrap(Context ctx, Script tscScript) throws TscInvocationException {
+        host.reset(Collections.singletonList("--version"), "utf-8");
+        host.setQuiet(true);
+        try {
+            tscScript.exec(ctx, globalScope);
+        } catch (JavaScriptException e) {
+            checkExit(e);
+        } finally {
+            host.setQuiet(false);
+        }
+    }
+
+    public String getEngineName() {
+        return "Rhino";
+    }
+
+    public synchronized void compile(List<String> args, String encoding) throws TscInvocationException {
+        host.reset(args, encoding);
+        run("__tscCompile");
+    }
+
+    public synchronized void compileAffected(List<String> args, List<String> affectedFiles, String encoding)
+            throws TscInvocationException {
+        host.reset(args, encoding);
+        host.setAffectedFiles(affectedFiles);
+        run("__tscCompileAffected");
+    }
+
+    public synchronized void transpile(List<String> args, String encoding) throws TscInvocationException {
+        host.reset(args, encoding);
+        run("__tscTranspile");
+    }
+
+    public void setCancelToken(CancelToken token) {
+        cancelToken = token;
+    }
+
+    public synchronized void setWorkingDirectory(File directory) {
+        host.setWorkingDirectory(directory);
+    }
+
+    public synchronized void setOutput(PrintStream output) {
+        host.setOutput(output);
+    }
+
+    public synchronized void setDiagnostics(DiagnosticCollector diagnostics) {
+        host.setDiagnostics(diagnostics);
+    }
+
+    public synchronized void setMetrics(CompileMetrics metrics) {
+        host.setMetrics(metrics);
+    }
+
+    public synchronized void setOutputWriter(OutputWriter writer) {
+        host.setOutputWriter(writer);
+    }
+
+    public CompileMetrics getStartupMetrics() {
+        return startup;
+    }
+
+    public synchronized void retainMetadata(File directory) {
+        host.getMetadata().retain(directory);
+    }
+
+    public synchronized void invalidate(Collection<File> files) {
+        for (File file : files) {
+            host.getMetadata().invalidate(file);
+        }
+    }
+
+    /**
+     * Calls a compile function and waits for the outputs it handed to the
+     * output writer, so the compile only succeeds once they are written.
+     */
+    private void run(String function) throws TscInvocationException {
+        TscInvocationException failure = null;
+        try {
+            call(function);
+        } catch (TscInvocationException e) {
+            failure = e;
+        }
+        try {
+            host.flushOutputs();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = new TscInvocationException(e.getMessage(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void call(String function) throws TscInvocationException {
+        CancelToken.check(cancelToken);
+        try {
+            Context ctx = contextFactory.enterContext();
+            Function compile = (Function) globalScope.get(function, globalScope);
+            compile.call(ctx, globalScope, globalScope, new Object[0]);
+        } catch (Cancellation e) {
+            discardCancelledSources();
+            throw new TscCancelledException();
+        } catch (JavaScriptException e) {
+            checkExit(e);
+        } catch (RhinoException e) {
+            throw new TscInvocationException("Rhino Error: " + e.getMessage(), e);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Drops the SourceFiles the cancelled compile used from the source cache
+     * of the session: the cancel may have stopped the binder half way, and
+     * tsc never binds a file that has its locals again.
+     */
+    private void discardCancelledSources() {
+        discarding = true;
+        try {
+            Function discard = (Function) globalScope.get("__discardCancelledSources", globalScope);
+            discard.call(Context.getCurrentContext(), globalScope, globalScope, new Object[0]);
+        } finally {
+            discarding = false;
+        }
+    }
+
+    /**
+     * Accepts a <code>process.exit(0)</code>, failing on any other exit status
+     * or JavaScript error.
+     */
+    private void checkExit(JavaScriptException e) throws TscInvocationException {
+        ProcessExit exit = host.getExit();
+        if (exit == null) {
+            throw new TscInvocationException("JavaScript Error: " + e.details() + "\nJS stack:\n" + e.getScriptStackTrace(), e);
+        }
+        if (exit.getStatus() != 0) {
+            throw new TscInvocationException("Process Error: " + exit.getStatus(), e);
+        }
+    }
+
+    /**
+     * Thrown through the interpreter to stop a cancelled compile. An Error,
+     * so the scripts cannot catch it.
+     */
+    private static class Cancellation extends Error {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,134 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.serialize.ScriptableInputStream;
+import org.mozilla.javascript.serialize.ScriptableOutputStream;
+
+/**
+ * The global variables of an initialized compiler scope, serialized so a new
+ * JVM restores the <code>ts</code> namespace and the shims instead of running
+ * node.js, filewedge.js and tsc.js again.
+ * <p>
+ * Only the variables the scripts defined are written. References to the
+ * standard objects, <code>__host</code>, <code>require</code> and the scope
+ * itself are written by name and resolved in the new scope, so the restored
+ * functions call the new host. Snapshots are keyed by a hash of the scripts,
+ * including the shim modules they require, and the Rhino version; one that cannot be read is deleted and the scripts
+ * run as usual. Failures to write one are logged as warnings, as every later
+ * session then loads the scripts again. Interpreted scripts only: compiled ones are instances of
+ * classes generated in another class loader.
+ */
+public class ScopeSnapshot {
+
+    /** The scripts, and the modules they require, whose closures are written. */
+    private static final List<String> SCRIPTS = Arrays.asList(
+            "node.js", "filewedge.js", "tsc.js", "sourcecache.js", "transpile.js",
+            "modules/fs.js", "modules/module.js", "modules/os.js", "modules/path.js");
+    private static final List<String> HOST_NAMES = Arrays.asList("__host", "require");
+
+    private final File file;
+    private final Log log;
+
+    /**
+     * @param log receives the failures, or null
+     */
+    public ScopeSnapshot(File cacheDirectory, Context ctx, Log log) throws IOException {
+        MessageDigest digest = Checksums.newDigest();
+        for (String script : SCRIPTS) {
+            Checksums.update(digest, ScriptClassCache.readResource(script));
+        }
+        Checksums.update(digest, "\n" + ctx.getImplementationVersion());
+        this.file = new File(cacheDirectory, "scope-" + Checksums.toHex(digest.digest()) + ".ser");
+        this.log = log;
+    }
+
+    /**
+     * Defines the variables of the snapshot in a scope holding only the
+     * standard objects, <code>__host</code> and <code>require</code>.
+     *
+     * @return false if there is no usable snapshot, leaving the scope as it was
+     */
+    @SuppressWarnings("unchecked")
+    public boolean restore(ScriptableObject scope) {
+        if (!file.isFile()) {
+            return false;
+        }
+        Map<String, Object> variables;
+        try {
+            ScriptableInputStream in = new ScriptableInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), scope);
+            try {
+                variables = (Map<String, Object>) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            // stale or damaged, the next session writes a new one
+            if (log != null) {
+                log.debug("Discarding compiler scope snapshot " + file + ": " + e);
+            }
+            file.delete();
+            return false;
+        }
+        for (Map.Entry<String, Object> variable : variables.entrySet()) {
+            ScriptableObject.putProperty(scope, variable.getKey(), variable.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Writes the variables the scripts defined in the scope through a
+     * temporary file renamed into place, so concurrent builds never read a
+     * partial snapshot. Failures only cost the next build its shortcut.
+     */
+    public void store(Context ctx, ScriptableObject scope) {
+        if (file.isFile()) {
+            return;
+        }
+        ScriptableObject standard = ctx.initStandardObjects();
+        Map<String, Object> variables = new LinkedHashMap<String, Object>();
+        for (Object id : scope.getIds()) {
+            if (id instanceof String && !HOST_NAMES.contains(id) && !ScriptableObject.hasProperty(standard, (String) id)) {
+                variables.put((String) id, ScriptableObject.getProperty(scope, (String) id));
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, file.getName() + ".tmp" + System.nanoTime());
+        try {
+            ScriptableOutputStream out = new ScriptableOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)), scope);
+            try {
+                for (String name : HOST_NAMES) {
+                    out.addExcludedName(name);
+                }
+                out.writeObject(variables);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                throw new IOException("cannot rename " + tmp);
+            }
+        } catch (Exception e) {
+            // a scope holding a Java object cannot be serialized
+            if (log != null) {
+                log.warn("Cannot write compiler scope snapshot " + file + ": " + e);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+/**
+ * Loads the bundled scripts, compiling them to JVM classes when an
+ * optimization level of 0 or more is requested.
+ * <p>
+ * A single class method is limited to 64K of bytecode, which tsc.js
+ * exceeds as a whole, so scripts are compiled one top-level statement group
+ * at a time and run in sequence. Generated classes are stored under the
+ * cache directory, keyed by a hash of the script source, the Rhino version
+ * and the optimization level, so only the first build pays for the code
+ * generation.
+ */
+public class ScriptClassCache {
+
+    private static final String INDEX = "classes.index";
+
+    private final File cacheDirectory;
+    private final int optimizationLevel;
+    private Log log;
+
+    /**
+     * @param cacheDirectory where to keep generated classes, or null to only compile in memory
+     * @param optimizationLevel Rhino optimization level, -1 to interpret
+     */
+    public ScriptClassCache(File cacheDirectory, int optimizationLevel) {
+        this.cacheDirectory = cacheDirectory;
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    /**
+     * Receives the failures that only cost the caches their shortcut, or
+     * nothing if null.
+     */
+    public void setLog(Log log) {
+        this.log = log;
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public Script load(Context ctx, String resource) throws IOException {
+        String source = readResource(resource);
+        if (optimizationLevel < 0) {
+            ctx.setOptimizationLevel(-1);
+            return ctx.compileString(source, resource, 1, null);
+        }
+
+        String prefix = resource.replaceAll("[^A-Za-z0-9]", "_");
+        List<byte[]> classFiles = new ArrayList<byte[]>();
+        List<List<String>> chunks = null;
+        File dir = null;
+        if (cacheDirectory != null) {
+            dir = new File(cacheDirectory, prefix + "-" + key(ctx, source));
+            chunks = readIndex(dir);
+        }
+        if (chunks == null) {
+            chunks = new ArrayList<List<String>>();
+            compileChunks(source, resource, prefix, chunks, classFiles);
+            if (dir != null) {
+                store(dir, chunks, classFiles);
+            }
+        } else {
+            for (List<String> chunk : chunks) {
+                for (String className : chunk) {
+                    classFiles.add(FileUtils.readFileToByteArray(new File(dir, className + ".class")));
+                }
+            }
+        }
+        return define(ctx, chunks, classFiles);
+    }
+
+    private String key(Context ctx, String source) {
+        MessageDigest digest = Checksums.newDigest();
+        Checksums.update(digest, source);
+        Checksums.update(digest, "\n" + ctx.getImplementationVersion());
+        Checksums.update(digest, "\n" + optimizationLevel);
+        return Checksums.toHex(digest.digest());
+    }
+
+    /**
+     * Compiles each run of lines starting at a top-level statement into its
+     * own set of classes.
+     */
+    private void compileChunks(String source, String resource, String prefix,
+            List<List<String>> chunks, List<byte[]> classFiles) {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setOptimizationLevel(optimizationLevel);
+        AstRoot root = new Parser(env).parse(source, resource, 1);
+
+        List<Integer> startLines = new ArrayList<Integer>();
+        for (Node child = root.getFirstChild(); child != null; child = child.getNext()) {
+            int line = child.getLineno();
+            if (startLines.isEmpty()) {
+                line = 1;
+            }
+            if (startLines.isEmpty() || line > startLines.get(startLines.size() - 1)) {
+                startLines.add(line);
+            }
+        }
+        String[] lines = source.split("\n", -1);
+        ClassCompiler compiler = new ClassCompiler(env);
+        for (int i = 0; i < startLines.size(); i++) {
+            int from = startLines.get(i);
+            int to = i + 1 < startLines.size() ? startLines.get(i + 1) - 1 : lines.length;
+            StringBuilder chunk = new StringBuilder();
+            for (int line = from; line <= to; line++) {
+                chunk.append(lines[line - 1]).append('\n');
+            }
+            Object[] compiled = compiler.compileToClassFiles(chunk.toString(), resource, from, prefix + "_" + i);
+            List<String> names = new ArrayList<String>();
+            for (int j = 0; j < compiled.length; j += 2) {
+                names.add((String) compiled[j]);
+                classFiles.add((byte[]) compiled[j + 1]);
+            }
+            chunks.add(names);
+        }
+    }
+
+    private List<List<String>> readIndex(File dir) throws IOException {
+        File index = new File(dir, INDEX);
+        if (!index.isFile()) {
+            return null;
+        }
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(index), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> names = new ArrayList<String>();
+                for (String name : line.trim().split(" ")) {
+                    names.add(name);
+                }
+                chunks.add(names);
+            }
+        } finally {
+            reader.close();
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes the classes to a private directory and renames it into place, so
+     * concurrent builds never see a half written entry.
+     */
+    private void store(File dir, List<List<String>> chunks, List<byte[]> classFiles) throws IOException {
+        File tmp = new File(dir.getParentFile(), dir.getName() + ".tmp" + System.nanoTime());
+        if (!tmp.mkdirs()) {
+            return;
+        }
+        try {
+            int n = 0;
+            Writer index = new OutputStreamWriter(new FileOutputStream(new File(tmp, INDEX)), "UTF-8");
+            try {
+                for (List<String> chunk : chunks) {
+                    StringBuilder line = new StringBuilder();
+                    for (String className : chunk) {
+                        OutputStream out = new FileOutputStream(new File(tmp, className + ".class"));
+                        try {
+                            out.write(classFiles.get(n++));
+                        } finally {
+                            out.close();
+                        }
+                        if (line.length() > 0) {
+                            line.append(' ');
+                        }
+                        line.append(className);
+                    }
+                    index.write(line.append('\n').toString());
+                }
+            } finally {
+                index.close();
+            }
+            tmp.renameTo(dir);
+        } finally {
+            if (tmp.exists()) {
+                FileUtils.deleteQuietly(tmp);
+            }
+        }
+    }
+
+    private Script define(Context ctx, List<List<String>> chunks, List<byte[]> classFiles) throws IOException {
+        GeneratedClassLoader loader = ctx.createClassLoader(ScriptClassCache.class.getClassLoader());
+        List<Class<?>> mainClasses = new ArrayList<Class<?>>();
+        int n = 0;
+        for (List<String> chunk : chunks) {
+            for (int i = 0; i < chunk.size(); i++) {
+                Class<?> c = loader.defineClass(chunk.get(i), classFiles.get(n++));
+                if (i == 0) {
+                    mainClasses.add(c);
+                }
+            }
+        }
+        final List<Script> scripts = new ArrayList<Script>();
+        try {
+            for (Class<?> c : mainClasses) {
+                loader.linkClass(c);
+                scripts.add((Script) c.getConstructor().newInstance());
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot instantiate compiled script: " + e.getMessage());
+        }
+        return new Script() {
+            public Object exec(Context cx, Scriptable scope) {
+                Object result = null;
+                for (Script script : scripts) {
+                    result = script.exec(cx, scope);
+                }
+                return result;
+            }
+        };
+    }
+
+    static String readResource(String resource) throws IOException {
+        InputStream stream = ScriptClassCache.class.getClassLoader().getResourceAsStream(resource);
+        if (stream == null) {
+            throw new FileNotFoundException("Resource open error: " + resource);
+        }
+        try {
+            return IOUtils.toString(stream);
+        } catch (IOException e) {
+            throw new IOException("Resource read error: " + resource);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A warm TypeScript compiler running on a JSR-223 engine such as Nashorn or
+ * GraalJS. Nashorn and GraalJS compile scripts to bytecode and, with Graal,
+ * further JIT them, which pays off on large projects.
+ * <p>
+ * Those engines have no CommonJS support, so require.js provides a minimal
+ * <code>require()</code> over the bundled modules before the node.js shims
+ * are loaded.
+ */
+public class ScriptEngineTscSession implements TscSession {
+
+    private final TscHost host = new TscHost();
+    private final CompileMetrics startup = new CompileMetrics();
+    private final ScriptEngine engine;
+    private final String engineName;
+    private volatile CancelToken cancelToken;
+
+    public ScriptEngineTscSession(ScriptEngine engine, String engineName) throws IOException, TscInvocationException {
+        this.engine = engine;
+        this.engineName = engineName;
+
+        // GraalJS only exposes Java objects to scripts when asked to.
+        engine.put("polyglot.js.allowHostAccess", Boolean.TRUE);
+        engine.put("__host", host);
+        long start = System.currentTimeMillis();
+        try {
+            eval("require.js");
+            eval("node.js");
+            eval("filewedge.js");
+        } catch (ScriptException e) {
+            throw new TscInvocationException(engineName + " Error while loading the node.js shims", e);
+        }
+
+        host.reset(Collections.singletonList("--version"), "utf-8");
+        host.setQuiet(true);
+        try {
+            eval("tsc.js");
+        } catch (ScriptException e) {
+            checkExit(e);
+        } finally {
+            host.setQuiet(false);
+        }
+        try {
+            eval("sourcecache.js");
+            eval("transpile.js");
+        } catch (ScriptException e) {
+            throw new TscInvocationException(engineName + " Error while loading the compiler extensions", e);
+        }
+        // these engines compile while evaluating, so it all counts as bootstrap
+        startup.addStartup(0, System.currentTimeMillis() - start);
+    }
+
+    private void eval(String resource) throws IOException, ScriptException {
+        InputStream stream = ScriptEngineTscSession.class.getClassLoader().getResourceAsStream(resource);
+        if (stream == null) {
+            throw new FileNotFoundException("Resource open error: " + resource);
+        }
+        Reader reader = new InputStreamReader(stream);
+        try {
+            engine.put(ScriptEngine.FILENAME, resource);
+            engine.eval(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public String getEngineName() {
+        return engineName;
+    }
+
+    public synchronized void compile(List<String> args, String encoding) throws TscInvocationException {
+        host.reset(args, encoding);
+        run("__tscCompile");
+    }
+
+    public synchronized void compileAffected(List<String> args, List<String> affectedFiles, String encoding)
+            throws TscInvocationException {
+        host.reset(args, encoding);
+        host.setAffectedFiles(affectedFiles);
+        run("__tscCompileAffected");
+    }
+
+    public synchronized void transpile(List<String> args, String encoding) throws TscInvocationException {
+        host.reset(args, encoding);
+        run("__tscTranspile");
+    }
+
+    /**
+     * JSR-223 gives no way to interrupt a script, so only compiles that did
+     * not start yet are cancelled, the running one completes.
+     */
+    public void setCancelToken(CancelToken token) {
+        cancelToken = token;
+    }
+
+    public synchronized void setWorkingDirectory(File directory) {
+        host.setWorkingDirectory(directory);
+    }
+
+    public synchronized void setOutput(PrintStream output) {
+        host.setOutput(output);
+    }
+
+    public synchronized void setDiagnostics(DiagnosticCollector diagnostics) {
+        host.setDiagnostics(diagnostics);
+    }
+
+    public synchronized void setMetrics(CompileMetrics metrics) {
+        host.setMetrics(metrics);
+    }
+
+    public synchronized void setOutputWriter(OutputWriter writer) {
+        host.setOutputWriter(writer);
+    }
+
+    public CompileMetrics getStartupMetrics() {
+        return startup;
+    }
+
+    public synchronized void retainMetadata(File directory) {
+        host.getMetadata().retain(directory);
+    }
+
+    public synchronized void invalidate(Collection<File> files) {
+        for (File file : files) {
+            host.getMetadata().invalidate(file);
+        }
+    }
+
+    /**
+     * Calls a compile function and waits for the outputs it handed to the
+     * output writer, so the compile only succeeds once they are written.
+     */
+    private void run(String function) throws TscInvocationException {
+        TscInvocationException failure = null;
+        try {
+            call(function);
+        } catch (TscInvocationException e) {
+            failure = e;
+        }
+        try {
+            host.flushOutputs();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = new TscInvocationException(e.getMessage(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void call(String function) throws TscInvocationException {
+        CancelToken.check(cancelToken);
+        try {
+            ((Invocable) engine).invokeFunction(function);
+        } catch (ScriptException e) {
+            checkExit(e);
+        } catch (NoSuchMethodException e) {
+            throw new TscInvocationException(engineName + " Error: node.js shim not loaded", e);
+        }
+    }
+
+    /**
+     * Accepts a <code>process.exit(0)</code>, failing on any other exit status
+     * or script error.
+     */
+    private void checkExit(ScriptException e) throws TscInvocationException {
+        ProcessExit exit = host.getExit();
+        if (exit == null) {
+            throw new TscInvocationException("JavaScript Error: " + e.getMessage(), e);
+        }
+        if (exit.getStatus() != 0) {
+            throw new TscInvocationException("Process Error: " + exit.getStatus(), e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The warm compiler sessions shared by every execution of the plugin in a
+ * build. Maven loads a plugin once per build, so this static pool lives as
+ * long as the plugin class loader, and each module reuses a session bootstrapped
+ * by an earlier one instead of loading tsc.js again.
+ * <p>
+ * A session is used by one execution at a time: concurrent executions, as in
+ * a parallel reactor build, each get their own, and sessions are only
+ * created when every matching one is in use.
+ * <p>
+ * The idle sessions are dropped once no execution runs and every execution
+ * the projects of the build configured has ended, whatever order a parallel
+ * build runs them in.
+ */
+public final class SharedTscSessions {
+
+    private static final Map<String, List<TscSession>> idle = new HashMap<String, List<TscSession>>();
+    private static final Map<TscSession, String> keys = new IdentityHashMap<TscSession, String>();
+    private static long bootstrapMillis;
+    private static int bootstraps;
+    private static int reuses;
+    private static int activeExecutions;
+    private static Map<String, Integer> expectedExecutions;
+    private static boolean anyExpected;
+
+    private SharedTscSessions() {
+    }
+
+    /**
+     * @param metrics records the compiles of the session, and its startup if
+     *        it is a new one; may be null
+     * @return an idle session for the engine and script options, or a new
+     *         one; to be given back with {@link #release}
+     */
+    public static TscSession acquire(String engine, ScriptClassCache scripts, CompileMetrics metrics)
+            throws IOException, TscInvocationException {
+        String key = engine + "|" + scripts.getOptimizationLevel() + "|" + scripts.getCacheDirectory();
+        TscSession session = null;
+        synchronized (SharedTscSessions.class) {
+            List<TscSession> sessions = idle.get(key);
+            if (sessions != null && !sessions.isEmpty()) {
+                reuses++;
+                session = sessions.remove(sessions.size() - 1);
+            }
+        }
+        if (session == null) {
+            long start = System.currentTimeMillis();
+            session = TscSessions.create(engine, scripts);
+            synchronized (SharedTscSessions.class) {
+                bootstrapMillis += System.currentTimeMillis() - start;
+                bootstraps++;
+                keys.put(session, key);
+            }
+            if (metrics != null) {
+                metrics.add(session.getStartupMetrics());
+            }
+        }
+        session.setMetrics(metrics);
+        return session;
+    }
+
+    /**
+     * Makes a session available to the other executions, forgetting what
+     * its last user configured.
+     */
+    public static void release(TscSession session) {
+        session.setWorkingDirectory(null);
+        session.setOutput(null);
+        session.setMetrics(null);
+        session.setOutputWriter(null);
+        session.setCancelToken(null);
+        session.setDiagnostics(null);
+        session.retainMetadata(null);
+        synchronized (SharedTscSessions.class) {
+            String key = keys.get(session);
+            if (key == null) {
+                return;
+            }
+            List<TscSession> sessions = idle.get(key);
+            if (sessions == null) {
+                sessions = new ArrayList<TscSession>();
+                idle.put(key, sessions);
+            }
+            sessions.add(session);
+        }
+    }
+
+    /**
+     * Registers a running execution of the plugin.
+     *
+     * @param expected the number of executions each project of the build
+     *        configured, by project id; only the first execution of the
+     *        build registers them
+     * @return true if no other execution is running
+     */
+    public static synchronized boolean begin(Map<String, Integer> expected) {
+        if (expectedExecutions == null) {
+            expectedExecutions = new HashMap<String, Integer>(expected);
+            anyExpected = !expected.isEmpty();
+        }
+        return ++activeExecutions == 1;
+    }
+
+    /**
+     * Ends an execution registered with {@link #begin}, and the build once it
+     * was the last expected one. Executions no project configured, such as
+     * goals invoked on the command line, end the build with the last project
+     * of the reactor.
+     *
+     * @param projectId the project of the execution, or null outside of a
+     *        Maven build
+     */
+    public static synchronized void end(String projectId, boolean lastProject, Log log) {
+        activeExecutions--;
+        Integer remaining = expectedExecutions != null ? expectedExecutions.get(projectId) : null;
+        if (remaining != null && remaining > 1) {
+            expectedExecutions.put(projectId, remaining - 1);
+        } else if (remaining != null) {
+            expectedExecutions.remove(projectId);
+        }
+        if (activeExecutions == 0 && expectedExecutions != null && expectedExecutions.isEmpty()
+                && (anyExpected || lastProject)) {
+            shutdown(log);
+        }
+    }
+
+    /**
+     * Drops the idle sessions at the end of the build and logs how much
+     * bootstrap time sharing them saved.
+     */
+    static synchronized void shutdown(Log log) {
+        if (bootstraps > 0 && reuses > 0) {
+            log.info(String.format("Shared TypeScript compiler reused %s time(s), saving about %s ms of startup",
+                    reuses, reuses * bootstrapMillis / bootstraps));
+        }
+        for (List<TscSession> sessions : idle.values()) {
+            for (TscSession session : sessions) {
+                keys.remove(session);
+            }
+        }
+        idle.clear();
+        expectedExecutions = null;
+        bootstrapMillis = 0;
+        bootstraps = 0;
+        reuses = 0;
+    }
+}
@@ -0,0 +1,344 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.json.JsonParser;
+
+/**
+ * The parts of a <code>tsconfig.json</code> the plugin needs to know which
+ * files a project compiles and writes, without running the compiler: the
+ * <code>files</code>, <code>include</code> and <code>exclude</code> lists
+ * and the output options.
+ * <p>
+ * Without <code>files</code> and <code>include</code>, every TypeScript file
+ * below the directory of the configuration is compiled. Excludes are paths
+ * or patterns relative to that directory, and exclude everything below them;
+ * without any, <code>node_modules</code>, <code>bower_components</code>,
+ * <code>jspm_packages</code> and the output directory are excluded.
+ */
+public class TsConfig {
+
+    private static final String[] EXTENSIONS = { ".ts", ".tsx" };
+    private static final List<String> DEFAULT_EXCLUDES = Arrays.asList("node_modules", "bower_components", "jspm_packages");
+
+    private final File file;
+    private final File directory;
+    private final List<String> files = new ArrayList<String>();
+    private final List<String> includes = new ArrayList<String>();
+    private final List<String> excludes = new ArrayList<String>();
+    private File outDir;
+    private File outFile;
+    private boolean declaration;
+
+    private TsConfig(File file) {
+        this.file = file.getAbsoluteFile();
+        this.directory = this.file.getParentFile();
+    }
+
+    /**
+     * @param project the configuration file, or the directory containing
+     *        <code>tsconfig.json</code>
+     * @throws IOException if the file cannot be read or is not valid JSON
+     */
+    public static TsConfig read(File project, String encoding) throws IOException {
+        File file = project.isDirectory() ? new File(project, "tsconfig.json") : project;
+        TsConfig config = new TsConfig(file);
+        Object json;
+        Context ctx = Context.enter();
+        try {
+            json = new JsonParser(ctx, ctx.initStandardObjects()).parseValue(
+                    stripComments(FileUtils.readFileToString(file, encoding)));
+        } catch (JsonParser.ParseException e) {
+            throw new IOException("Invalid " + file + ": " + e.getMessage(), e);
+        } finally {
+            Context.exit();
+        }
+        if (!(json instanceof Map)) {
+            throw new IOException("Invalid " + file + ": not a JSON object");
+        }
+        config.parse((Map<?, ?>) json);
+        return config;
+    }
+
+    private void parse(Map<?, ?> json) {
+        files.addAll(strings(json.get("files")));
+        includes.addAll(strings(json.get("include")));
+        if (json.get("files") == null && json.get("include") == null) {
+            includes.add("**/*");
+        }
+        Object options = json.get("compilerOptions");
+        if (options instanceof Map) {
+            Map<?, ?> compilerOptions = (Map<?, ?>) options;
+            outDir = path(compilerOptions.get("outDir"));
+            outFile = path(compilerOptions.get("outFile"));
+            if (outFile == null) {
+                outFile = path(compilerOptions.get("out"));
+            }
+            declaration = Boolean.TRUE.equals(compilerOptions.get("declaration"));
+        }
+        if (json.get("exclude") != null) {
+            excludes.addAll(strings(json.get("exclude")));
+        } else {
+            excludes.addAll(DEFAULT_EXCLUDES);
+            if (outDir != null) {
+                excludes.add(relativePath(outDir));
+            }
+        }
+    }
+
+    private static List<String> strings(Object value) {
+        if (!(value instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<String>();
+        for (Object item : (List<?>) value) {
+            if (item instanceof String) {
+                strings.add((String) item);
+            }
+        }
+        return strings;
+    }
+
+    private File path(Object value) {
+        return value instanceof String ? normalize(new File(directory, (String) value)) : null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the output directory, or null if the outputs are written next
+     *         to the sources
+     */
+    public File getOutDir() {
+        return outDir;
+    }
+
+    /**
+     * @return the file all outputs are concatenated into, or null
+     */
+    public File getOutFile() {
+        return outFile;
+    }
+
+    public boolean isDeclaration() {
+        return declaration;
+    }
+
+    /**
+     * @return the files the project compiles, in the order of
+     *         <code>files</code> followed by the matches of <code>include</code>
+     */
+    public List<File> getInputFiles() {
+        Set<File> inputs = new LinkedHashSet<File>();
+        for (String name : files) {
+            inputs.add(normalize(new File(directory, name)));
+        }
+        if (!includes.isEmpty()) {
+            collect(directory, inputs);
+        }
+        return new ArrayList<File>(inputs);
+    }
+
+    /**
+     * @return true if the file, existing or not, is one the project
+     *         compiles when it exists
+     */
+    public boolean isInput(File file) {
+        File input = normalize(file);
+        for (String name : files) {
+            if (normalize(new File(directory, name)).equals(input)) {
+                return true;
+            }
+        }
+        String path = relativePath(input);
+        return !includes.isEmpty() && !new File(path).isAbsolute() && isTypeScript(input.getName())
+                && !isExcluded(path) && isIncluded(path) && !isEmittedDeclaration(input);
+    }
+
+    /**
+     * @return true if the directory holds, or leads to, files the project
+     *         compiles, existing or added later: a directory of a listed
+     *         file or below an include, and not excluded
+     */
+    public boolean mayContainInputs(File dir) {
+        String path = relativePath(dir);
+        if (normalize(dir).equals(directory)) {
+            return true;
+        }
+        if (new File(path).isAbsolute()) {
+            return false;
+        }
+        for (String name : files) {
+            if (isSameOrBelow(relativePath(normalize(new File(directory, name)).getParentFile()), path)) {
+                return true;
+            }
+        }
+        if (isExcluded(path)) {
+            return false;
+        }
+        for (String include : includes) {
+            String base = literalBase(pattern(include));
+            if (base.length() == 0 || isSameOrBelow(path, base) || isSameOrBelow(base, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the directories of a pattern before its first wildcard
+     */
+    private static String literalBase(String pattern) {
+        StringBuilder base = new StringBuilder();
+        for (String segment : pattern.split(Pattern.quote(File.separator))) {
+            if (segment.contains("*") || segment.contains("?")) {
+                break;
+            }
+            if (base.length() > 0) {
+                base.append(File.separator);
+            }
+            base.append(segment);
+        }
+        return base.toString();
+    }
+
+    private static boolean isSameOrBelow(String path, String dir) {
+        return path.equals(dir) || path.startsWith(dir + File.separator);
+    }
+
+    private void collect(File dir, Set<File> inputs) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            String path = relativePath(child);
+            if (isExcluded(path)) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                collect(child, inputs);
+            } else if (isTypeScript(child.getName()) && isIncluded(path) && !isEmittedDeclaration(child)) {
+                inputs.add(normalize(child));
+            }
+        }
+    }
+
+    private boolean isIncluded(String path) {
+        for (String include : includes) {
+            String pattern = pattern(include);
+            if (SelectorUtils.matchPath(pattern, path) || SelectorUtils.matchPath(pattern + File.separator + "**", path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(String path) {
+        for (String exclude : excludes) {
+            String pattern = pattern(exclude);
+            if (SelectorUtils.matchPath(pattern, path) || SelectorUtils.matchPath(pattern + File.separator + "**", path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String pattern(String spec) {
+        String pattern = spec.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (pattern.startsWith("." + File.separator)) {
+            pattern = pattern.substring(2);
+        }
+        while (pattern.endsWith(File.separator)) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        return pattern;
+    }
+
+    /**
+     * Like tsc, skips a declaration file next to the source it was emitted
+     * for.
+     */
+    private static boolean isEmittedDeclaration(File file) {
+        String name = file.getName();
+        if (!name.endsWith(".d.ts")) {
+            return false;
+        }
+        String base = name.substring(0, name.length() - ".d.ts".length());
+        return new File(file.getParentFile(), base + ".ts").isFile() || new File(file.getParentFile(), base + ".tsx").isFile();
+    }
+
+    private static boolean isTypeScript(String name) {
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the path of a file relative to the configuration directory,
+     *         or its absolute path if it is outside
+     */
+    private String relativePath(File file) {
+        String path = normalize(file).getPath();
+        String prefix = directory.getPath() + File.separator;
+        return path.startsWith(prefix) ? path.substring(prefix.length()) : path;
+    }
+
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    /**
+     * Removes <code>//</code> and <code>/* *&#47;</code> comments outside of
+     * strings, which tsc accepts in its configuration.
+     */
+    static String stripComments(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                int end = i + 1;
+                while (end < text.length() && text.charAt(end) != '"') {
+                    end += text.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, text.length());
+                result.append(text, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '/') {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '*') {
+                int end = text.indexOf("*/", i + 2);
+                i = end < 0 ? text.length() : end + 2;
+                result.append(' ');
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+}
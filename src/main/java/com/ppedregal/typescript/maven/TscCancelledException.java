@@ -0,0 +1,14 @@
+package com.ppedregal.typescript.maven;
+
+/**
+ * Thrown by a compile whose {@link CancelToken} was cancelled.
+ */
+public class TscCancelledException extends TscInvocationException {
+
+	private static final long serialVersionUID = -2196482466131617447L;
+
+	public TscCancelledException() {
+		super("Compile cancelled");
+	}
+
+}
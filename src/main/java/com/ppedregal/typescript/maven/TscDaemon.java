@@ -0,0 +1,111 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A long-lived external compiler process, such as <code>tsc --watch</code>,
+ * that keeps its program in memory and recompiles on its own when sources
+ * change. Its output is streamed to the Maven log while it runs.
+ */
+public class TscDaemon {
+
+    private final List<String> command;
+    private final File directory;
+    private final Log log;
+    private Process process;
+    private Thread shutdownHook;
+    private final List<Thread> pumps = new ArrayList<Thread>();
+
+    /**
+     * @param directory the working directory of the process, or null for the
+     *        one of the JVM
+     */
+    public TscDaemon(List<String> command, File directory, Log log) {
+        this.command = new ArrayList<String>(command);
+        this.directory = directory;
+        this.log = log;
+    }
+
+    public void start() throws IOException {
+        process = new ProcessBuilder(command).directory(directory).start();
+        pumps.add(pump(process.getInputStream(), false));
+        pumps.add(pump(process.getErrorStream(), true));
+        // do not leave the compiler behind when the build is interrupted
+        shutdownHook = new Thread() {
+            public void run() {
+                process.destroy();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public boolean isAlive() {
+        if (process == null) {
+            return false;
+        }
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    public void stop() {
+        if (process == null) {
+            return;
+        }
+        process.destroy();
+        try {
+            process.waitFor();
+            for (Thread pump : pumps) {
+                pump.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
+        process = null;
+        pumps.clear();
+    }
+
+    private Thread pump(final InputStream stream, final boolean error) {
+        Thread thread = new Thread("tsc daemon " + (error ? "stderr" : "stdout")) {
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (error) {
+                            log.error(line);
+                        } else {
+                            log.info(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("tsc daemon output closed", e);
+                } finally {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
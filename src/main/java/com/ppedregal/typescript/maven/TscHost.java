@@ -0,0 +1,450 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The Java side of the node.js emulation. The shims in node.js, filewedge.js
+ * and modules/*.js only call methods on the instance bound to
+ * <code>__host</code>, which every supported JavaScript engine can do, so the
+ * same scripts run on Rhino, Nashorn and GraalJS.
+ */
+public class TscHost {
+
+    private final ClassLoader classLoader = TscHost.class.getClassLoader();
+    private final FileMetadataCache metadata = new FileMetadataCache();
+
+    private String[] args = new String[0];
+    private String[] affectedFiles = new String[0];
+    private String encoding = "utf-8";
+    private boolean quiet;
+    private File workingDirectory;
+    private PrintStream output;
+    private CompileMetrics metrics;
+    private DiagnosticCollector diagnostics;
+    private ProcessExit exit;
+    private OutputWriter outputWriter;
+    private final Map<File, Future<Void>> pendingWrites = new LinkedHashMap<File, Future<Void>>();
+    private final Set<File> pendingDirectories = new LinkedHashSet<File>();
+    private IOException writeFailure;
+
+    /**
+     * Prepares the host for a compile with the given tsc arguments.
+     */
+    public void reset(List<String> args, String encoding) {
+        this.args = args.toArray(new String[args.size()]);
+        this.affectedFiles = new String[0];
+        this.encoding = encoding;
+        this.exit = null;
+        try {
+            flushOutputs();
+        } catch (IOException e) {
+            // reported by the compile that wrote the file
+        }
+        metadata.clear();
+    }
+
+    /**
+     * @return the file metadata cached for the current compile
+     */
+    public FileMetadataCache getMetadata() {
+        return metadata;
+    }
+
+    public String[] getArgs() {
+        return args;
+    }
+
+    public void setAffectedFiles(List<String> affectedFiles) {
+        this.affectedFiles = affectedFiles.toArray(new String[affectedFiles.size()]);
+    }
+
+    /**
+     * @return the files to check and emit in an incremental compile
+     */
+    public String[] getAffectedFiles() {
+        return affectedFiles;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Records the status of a <code>process.exit()</code> call and returns the
+     * exception the script throws to unwind the compiler.
+     */
+    public ProcessExit exit(int status) {
+        exit = new ProcessExit(status);
+        return exit;
+    }
+
+    /**
+     * @return the last <code>process.exit()</code> since {@link #reset}, or null
+     */
+    public ProcessExit getExit() {
+        return exit;
+    }
+
+    public String getProperty(String name) {
+        return System.getProperty(name);
+    }
+
+    /**
+     * Resolves relative paths and <code>process.cwd()</code> against a
+     * directory, or against the working directory of the JVM if null, so
+     * concurrent builds of different modules each see their own.
+     */
+    public void setWorkingDirectory(File workingDirectory) {
+        this.workingDirectory = workingDirectory != null ? workingDirectory.getAbsoluteFile() : null;
+    }
+
+    public String cwd() {
+        return workingDirectory != null ? workingDirectory.getPath() : System.getProperty("user.dir");
+    }
+
+    public String platform() {
+        String osArch = System.getProperty("os.arch");
+        String osName = System.getProperty("os.name", "generic").toLowerCase(Locale.ENGLISH);
+        if (osName.indexOf("mac") >= 0 || osName.indexOf("darwin") >= 0) {
+            return "darwin";
+        } else if (osName.indexOf("win") >= 0) {
+            return osArch.indexOf("64") >= 0 ? "win64" : "win32";
+        } else {
+            return osName;
+        }
+    }
+
+    /**
+     * Sends the compiler messages to a stream, or to the console if null.
+     */
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Writes the outputs of the following compiles on the threads of a
+     * writer, or directly if null.
+     */
+    public void setOutputWriter(OutputWriter outputWriter) {
+        this.outputWriter = outputWriter;
+    }
+
+    /**
+     * Records the phase times and file I/O of the following compiles, or
+     * stops recording if null.
+     */
+    public void setMetrics(CompileMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called by the scripts with tsc's phase timers after each compile.
+     */
+    public void recordPhases(double program, double parse, double bind, double check, double emit,
+            double ioRead, double ioWrite) {
+        if (metrics != null) {
+            metrics.addPhases((long) program, (long) parse, (long) bind, (long) check, (long) emit,
+                    (long) ioRead, (long) ioWrite);
+        }
+    }
+
+    /**
+     * Collects the diagnostics of the following compiles, or prints them if
+     * null.
+     */
+    public void setDiagnostics(DiagnosticCollector diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Called by the scripts for each diagnostic tsc reports.
+     *
+     * @param file the source file, or null for a global diagnostic
+     */
+    public void report(String file, int line, int column, String category, int code, String message) {
+        Diagnostic diagnostic = new Diagnostic(file, line, column, category, code, message);
+        if (diagnostics != null) {
+            diagnostics.add(diagnostic);
+        } else {
+            print(false, diagnostic + "\n");
+        }
+    }
+
+    /**
+     * @return the number of errors after which the scripts stop checking, or
+     *         0 to check everything
+     */
+    public int getMaxErrors() {
+        return diagnostics != null ? diagnostics.getMaxErrors() : 0;
+    }
+
+    /**
+     * Called by the scripts when they stopped checking at the error limit.
+     */
+    public void stoppedAtErrorLimit() {
+        if (diagnostics != null) {
+            diagnostics.stop();
+        }
+    }
+
+    public void print(boolean error, String s) {
+        if (!quiet) {
+            PrintStream out = output != null ? output : error ? System.err : System.out;
+            out.print(s);
+        }
+    }
+
+    public boolean resourceExists(String name) throws IOException {
+        InputStream stream = classLoader.getResourceAsStream(name);
+        if (stream == null) {
+            return false;
+        }
+        stream.close();
+        return true;
+    }
+
+    /**
+     * @return the resource contents, or null if there is no such resource
+     */
+    public String readResource(String name, String enc) throws IOException {
+        InputStream stream = classLoader.getResourceAsStream(name);
+        if (stream == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = IOUtils.toByteArray(stream);
+            if (metrics != null) {
+                metrics.fileRead(bytes.length);
+            }
+            return decode(bytes, bytes.length, enc);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads a whole file with a single buffer sized from the channel and
+     * decodes it in one pass, keeping its line endings.
+     */
+    public String readFile(String path, String enc) throws IOException {
+        awaitWrite(file(path));
+        FileChannel channel = FileChannel.open(file(path).toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // the size may shrink while reading
+            }
+            if (metrics != null) {
+                metrics.fileRead(buffer.position());
+            }
+            return decode(buffer.array(), buffer.position(), enc);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decodes text, honouring and dropping a byte order mark like node's tsc
+     * host does.
+     */
+    private static String decode(byte[] bytes, int length, String enc) {
+        if (length >= 2 && (bytes[0] & 0xff) == 0xfe && (bytes[1] & 0xff) == 0xff) {
+            return new String(bytes, 2, length - 2, Charset.forName("UTF-16BE"));
+        }
+        if (length >= 2 && (bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xfe) {
+            return new String(bytes, 2, length - 2, Charset.forName("UTF-16LE"));
+        }
+        if (length >= 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+            return new String(bytes, 3, length - 3, Charset.forName("UTF-8"));
+        }
+        return new String(bytes, 0, length, Charset.forName(enc));
+    }
+
+    /**
+     * Encodes the data once and writes it with {@link OutputWriter#store},
+     * leaving an unchanged output untouched.
+     * <p>
+     * With an output writer, the comparison and the write run on its threads
+     * once the data is encoded, and {@link #flushOutputs} waits for them.
+     */
+    public void writeFile(String path, String data, String enc) throws IOException {
+        File file = file(path);
+        byte[] bytes = data.getBytes(Charset.forName(enc));
+        if (outputWriter == null) {
+            if (OutputWriter.store(file, bytes, metrics)) {
+                metadata.invalidate(file);
+            }
+            return;
+        }
+        // a second write of the file must not overtake the first one
+        awaitWrite(file);
+        metadata.invalidate(file);
+        pendingWrites.put(file, outputWriter.write(file, bytes, metrics));
+    }
+
+    /**
+     * Waits for the files handed to the output writer to be written,
+     * forgetting their metadata cached meanwhile.
+     *
+     * @throws IOException with the first write that failed since the last
+     *         flush
+     */
+    public void flushOutputs() throws IOException {
+        for (File file : new ArrayList<File>(pendingWrites.keySet())) {
+            awaitWrite(file);
+        }
+        for (File dir : pendingDirectories) {
+            // created for outputs that were never written
+            if (!dir.mkdirs() && !dir.isDirectory() && writeFailure == null) {
+                writeFailure = new IOException("Cannot create directory " + dir);
+            }
+            metadata.invalidate(dir);
+        }
+        pendingDirectories.clear();
+        IOException failure = writeFailure;
+        writeFailure = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void awaitWrite(File file) {
+        Future<Void> write = pendingWrites.remove(file);
+        if (write == null) {
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    write.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // the compile needs the file, whoever wants it stopped
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (writeFailure == null) {
+                        writeFailure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Cannot write " + file + ": " + e.getCause(), e.getCause());
+                    }
+                    break;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        metadata.invalidate(file);
+    }
+
+    /**
+     * @return a writer collecting the text, which is written like
+     *         {@link #writeFile} once it is closed
+     */
+    public Writer open(final String path, final String enc) {
+        return new StringWriter() {
+            public void close() throws IOException {
+                writeFile(path, toString(), enc);
+            }
+        };
+    }
+
+    /**
+     * @return a value that changes whenever the file is modified
+     */
+    public String stamp(String path) {
+        return metadata.stamp(file(path));
+    }
+
+    public boolean exists(String path) {
+        return pendingDirectories.contains(file(path)) || metadata.exists(file(path));
+    }
+
+    public boolean isFile(String path) {
+        return metadata.isFile(file(path));
+    }
+
+    public boolean isDirectory(String path) {
+        return pendingDirectories.contains(file(path)) || metadata.isDirectory(file(path));
+    }
+
+    /**
+     * With an output writer, only records the directory: the writer creates
+     * it with the first output written into it.
+     */
+    public boolean mkdir(String path) {
+        File dir = file(path);
+        if (outputWriter != null) {
+            return pendingDirectories.add(dir);
+        }
+        metadata.invalidate(dir);
+        return dir.mkdir();
+    }
+
+    public boolean delete(String path) {
+        File file = file(path);
+        awaitWrite(file);
+        metadata.invalidate(file);
+        return file.delete();
+    }
+
+    public String[] list(String path) {
+        return metadata.list(file(path));
+    }
+
+    public String canonicalPath(String path) throws IOException {
+        return file(path).getCanonicalPath();
+    }
+
+    public String dirname(String path) throws IOException {
+        File file = file(path);
+        if (file.isDirectory()) {
+            return file.getCanonicalPath();
+        } else {
+            return file.getParentFile().getCanonicalPath();
+        }
+    }
+
+    public URI toURI(String path) {
+        return file(path).toURI();
+    }
+
+    public String uriPath(URI uri) throws IOException {
+        return new File(uri).getCanonicalPath();
+    }
+
+    private File file(String path) {
+        File file = new File(path.replace('/', File.separatorChar).replace('\\', File.separatorChar));
+        return workingDirectory != null && !file.isAbsolute() ? new File(workingDirectory, file.getPath()) : file;
+    }
+}
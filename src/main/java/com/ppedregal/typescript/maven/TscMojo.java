@@ -16,30 +16,36 @@ package com.ppedregal.typescript.maven;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileFilter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.mozilla.javascript.Context;
-import org.mozilla.javascript.JavaScriptException;
-import org.mozilla.javascript.NativeArray;
-import org.mozilla.javascript.NativeJavaObject;
-import org.mozilla.javascript.NativeObject;
-import org.mozilla.javascript.RhinoException;
-import org.mozilla.javascript.Script;
-import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.ScriptableObject;
-import org.mozilla.javascript.commonjs.module.RequireBuilder;
-import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Goal which compiles a set of TypeScript files
@@ -47,6 +53,8 @@ import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptPr
  * @goal tsc
  *
  * @phase compile
+ *
+ * @threadSafe
  */
 public class TscMojo extends AbstractMojo
 {
@@ -105,12 +113,28 @@ public class TscMojo extends AbstractMojo
     private boolean noStandardLib = false;
 
     /**
-     * The amount of millis to wait before polling the source files for changes
+     * The amount of millis to wait before polling the source files for changes,
+     * when watching and the platform has no native file system events
      *
      * @parameter expression="${ts.pollTime}"
      */
     private long pollTime = 100;
 
+    /**
+     * The amount of millis the watched files must stay unchanged before they
+     * are compiled, so a burst of saves or a branch switch is compiled once.
+     * Changes arriving during a compile cancel it, and the latest state is
+     * compiled once quiet again. The built-in compiler on Rhino stops right
+     * away when interpreted, the default optimizationLevel of -1, also on
+     * the compile threads. Scripts compiled to classes, the Nashorn and
+     * GraalJS engines and the tsc executable cannot be interrupted and
+     * finish the running compile; of those, only the compiles that did not
+     * start yet are skipped.
+     *
+     * @parameter expression="${ts.quietPeriod}" default-value="200"
+     */
+    private long quietPeriod = 200;
+
     /**
      * If set, the TypeScript files will be compiled into a single JavaScript file.
      *
@@ -184,62 +208,909 @@ public class TscMojo extends AbstractMojo
      */
     private String tscExecutable;
 
-    private Script nodeScript;
-    private Script tscScript;
-    private Script fileWedgeScript;
-    private ScriptableObject globalScope;
+    /**
+     * Rhino optimization level used to run the bundled compiler. The default
+     * of -1 interprets tsc.js; 0 to 9 compile it to JVM classes, which are
+     * cached in scriptCacheDirectory so only the first build pays for it.
+     *
+     * @parameter expression="${ts.optimizationLevel}" default-value="-1"
+     */
+    private int optimizationLevel = -1;
+
+    /**
+     * Directory where the compiled classes of the bundled scripts, or the
+     * snapshot of the initialized compiler when they are interpreted, are
+     * cached between builds.
+     *
+     * @parameter expression="${ts.scriptCacheDirectory}" default-value="${settings.localRepository}/.cache/typescript-maven-plugin"
+     */
+    private File scriptCacheDirectory;
+
+    /**
+     * JavaScript engine running the built-in compiler: "rhino", "nashorn",
+     * "graaljs", or "auto" to use the fastest one available on this JVM.
+     *
+     * @parameter expression="${ts.engine}" default-value="rhino"
+     */
+    private String engine = TscSessions.RHINO;
+
+    /**
+     * File recording the input hashes, compiler arguments and outputs of the
+     * last successful compile. The compile is skipped when none of them
+     * changed since.
+     *
+     * @parameter expression="${ts.buildManifest}" default-value="${project.build.directory}/ts-build.manifest"
+     */
+    private File buildManifest;
+
+    /**
+     * Number of threads compiling independent groups of source files in
+     * parallel, each in its own JavaScript engine. Files importing or
+     * referencing each other form a group; a global script puts all files in
+     * one group. Only used when compiling to a target directory with the
+     * built-in compiler.
+     *
+     * @parameter expression="${ts.compileThreads}" default-value="1"
+     */
+    private int compileThreads = 1;
+
+    /**
+     * Set to true to convert each source file to JavaScript on its own,
+     * without type checking, for builds where the types are checked
+     * elsewhere. Only syntax errors are reported and no declarations are
+     * generated. The files are spread over compileThreads threads. Only used
+     * when compiling to a target directory with the built-in compiler.
+     *
+     * @parameter expression="${ts.transpileOnly}" default-value="false"
+     */
+    private boolean transpileOnly = false;
+
+    /**
+     * Set to true to keep a single 'tsc --watch' process running while
+     * watching with useTsc, instead of starting tsc for every change. It is
+     * restarted when source files are added or deleted.
+     *
+     * @parameter expression="${ts.tscDaemon}" default-value="false"
+     */
+    private boolean tscDaemon = false;
+
+    /**
+     * Maximum number of compiler messages to log. The others are only
+     * counted in the summary.
+     *
+     * @parameter expression="${ts.maxDiagnostics}" default-value="100"
+     */
+    private int maxDiagnostics = 100;
+
+    /**
+     * Number of errors after which the built-in compiler stops type checking
+     * the remaining files and skips the emit, so a badly broken build fails
+     * fast. 0 checks everything.
+     *
+     * @parameter expression="${ts.maxErrors}" default-value="0"
+     */
+    private int maxErrors = 0;
+
+    /**
+     * File receiving the time spent in each compiler phase, the files and
+     * bytes read and written and the peak heap usage of the compile, as
+     * JSON. Not written if empty. The heap is shared by the JVM, so in a
+     * parallel build its peak includes the modules compiled at the same
+     * time.
+     *
+     * @parameter expression="${ts.metricsFile}" default-value="${project.build.directory}/ts-build-metrics.json"
+     */
+    private File metricsFile;
+
+    /**
+     * Directory of compile outputs shared by builds, also on other machines
+     * through a network file system. A compile whose inputs, arguments,
+     * encoding and compiler scripts match an entry restores its outputs
+     * instead of running, and other compiles store theirs. The declaration
+     * fingerprint is not stored, the restoring build publishes its own. Not
+     * used if empty, without buildManifest, or with useTsc, as the tsc
+     * executable is identified by its path on this machine.
+     *
+     * @parameter expression="${ts.buildCache}"
+     */
+    private File buildCache;
+
+    /**
+     * Size of the build cache in megabytes, above which its least recently
+     * used entries are deleted.
+     *
+     * @parameter expression="${ts.buildCacheSize}" default-value="512"
+     */
+    private long buildCacheSize = 512;
+
+    /**
+     * Number of threads writing the files the built-in compiler emits while
+     * it goes on compiling. 0 writes them on the compiler thread.
+     *
+     * @parameter expression="${ts.outputThreads}" default-value="2"
+     */
+    private int outputThreads = 2;
+
+    /**
+     * The project being built.
+     *
+     * @parameter expression="${project}"
+     * @readonly
+     */
+    private MavenProject mavenProject;
+
+    /**
+     * All projects of the build, to release the shared compiler once all of
+     * them are compiled.
+     *
+     * @parameter expression="${reactorProjects}"
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * @parameter expression="${plugin.groupId}"
+     * @readonly
+     */
+    private String pluginGroupId;
+
+    /**
+     * @parameter expression="${plugin.artifactId}"
+     * @readonly
+     */
+    private String pluginArtifactId;
+
+    /**
+     * The scripts and libraries of the built-in compiler, all of which
+     * affect its outputs.
+     */
+    private static final List<String> COMPILER_RESOURCES = Arrays.asList(
+            "tsc.js", "node.js", "filewedge.js", "require.js", "sourcecache.js", "transpile.js",
+            "modules/fs.js", "modules/module.js", "modules/os.js", "modules/path.js",
+            "lib.d.ts", "lib.core.d.ts", "lib.dom.d.ts", "lib.scriptHost.d.ts", "lib.webworker.d.ts",
+            "lib.es6.d.ts", "lib.core.es6.d.ts");
+    private static volatile String compilerResourcesHash;
+
+    /** The versions of the tsc executables, by path and modification. */
+    private static final Map<String, String> TSC_VERSIONS = new ConcurrentHashMap<String, String>();
+
+    private CompileMetrics metrics;
+    private PrintStream output;
+    private volatile TscSession session;
+    private volatile TsConfig watchedConfig;
+    /** Cancels the running watch rebuild, null outside of one. */
+    private volatile CancelToken cancelToken;
+    private TscWorkerPool workerPool;
+    private OutputWriter outputWriter;
+    private String resolvedTscExecutable;
+    private boolean tscUnavailable;
     private boolean watching;
+    private boolean failed;
 
     public void execute() throws MojoExecutionException {
+        boolean alone = SharedTscSessions.begin(configuredExecutions());
         try {
-            compileScripts();
+            if (project == null) {
+                if (targetDirectory == null) {
+                    targetDirectory = new File("target/ts");
+                }
+                if (sourceDirectory == null) {
+                    sourceDirectory = new File("src/main/ts");
+                }
+
+                sourceDirectory.mkdirs();
+                targetDirectory.mkdirs();
+            }
+
+            BuildManifest previous = buildManifest != null ? BuildManifest.read(buildManifest) : null;
+            BuildManifest manifest = createBuildManifest(previous);
+            if (manifest != null && manifest.isUpToDate(previous)) {
+                getLog().info(String.format("Nothing to compile - all %s input file(s) are up to date", manifest.getInputCount()));
+            } else {
+                long start = System.currentTimeMillis();
+                metrics = new CompileMetrics();
+                workerPool = null;
+                if (alone) {
+                    // the peak is JVM-wide, so modules compiled meanwhile count too
+                    CompileMetrics.resetPeakHeap();
+                }
+                failed = false;
+                BuildCache cache = getBuildCache(manifest);
+                String cacheKey = cache != null ? manifest.getKey(baseDirectory()) : null;
+                boolean restored = cache != null && restoreOutputs(cache, cacheKey);
+                if (!restored) {
+                    if (project == null) {
+                        doCompileFiles(false);
+                    } else {
+                        // Use the tsconfig.json.
+                        doCompileTsConfig();
+                    }
+                }
+                publishDeclarationFingerprint();
+                writeBuildManifest(manifest);
+                if (cache != null && !restored && !failed) {
+                    storeOutputs(cache, cacheKey, manifest);
+                }
+                reportMetrics(System.currentTimeMillis() - start);
+            }
+
+            if (watch) {
+                watching = true;
+                checkForChanges();
+            }
+        } finally {
+            if (session != null) {
+                SharedTscSessions.release(session);
+                session = null;
+            }
+            if (outputWriter != null) {
+                outputWriter.shutdown();
+                outputWriter = null;
+            }
+            if (output != null) {
+                output.flush();
+                output = null;
+            }
+            SharedTscSessions.end(mavenProject != null ? mavenProject.getId() : null, isLastReactorProject(), getLog());
+        }
+    }
+
+    private void reportMetrics(long totalMillis) throws MojoExecutionException {
+        long peakHeap = CompileMetrics.peakHeap();
+        getLog().info(metrics.summary(totalMillis, peakHeap));
+        if (metricsFile != null && metricsFile.getPath().length() > 0) {
+            try {
+                metrics.write(metricsFile, totalMillis, peakHeap);
+            } catch (IOException e) {
+                throw createMojoExecutionException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of executions of the tsc goal each project of the
+     *         reactor configured, by project id
+     */
+    private Map<String, Integer> configuredExecutions() {
+        Map<String, Integer> executions = new HashMap<String, Integer>();
+        if (reactorProjects == null || pluginArtifactId == null) {
+            return executions;
+        }
+        for (MavenProject project : reactorProjects) {
+            int count = 0;
+            for (Object buildPlugin : project.getBuildPlugins()) {
+                Plugin plugin = (Plugin) buildPlugin;
+                if (pluginArtifactId.equals(plugin.getArtifactId()) && pluginGroupId.equals(plugin.getGroupId())) {
+                    for (Object execution : plugin.getExecutions()) {
+                        if (((PluginExecution) execution).getGoals().contains("tsc")) {
+                            count++;
+                        }
+                    }
+                }
+            }
+            if (count > 0) {
+                executions.put(project.getId(), count);
+            }
+        }
+        return executions;
+    }
+
+    /**
+     * @return true if this execution builds the last project of the reactor,
+     *         after which no goal invoked on the command line will need the
+     *         shared compiler
+     */
+    private boolean isLastReactorProject() {
+        if (mavenProject == null || reactorProjects == null || reactorProjects.isEmpty()) {
+            return false;
+        }
+        MavenProject last = reactorProjects.get(reactorProjects.size() - 1);
+        return last == mavenProject || last.getId().equals(mavenProject.getId());
+    }
+
+    /**
+     * @param previous the manifest of the last compile, whose hashes are
+     *        reused for the files that did not change, or null
+     * @return the manifest of the current inputs and arguments, or null when
+     *         the up-to-date check is disabled
+     */
+    private BuildManifest createBuildManifest(BuildManifest previous) throws MojoExecutionException {
+        if (buildManifest == null) {
+            return null;
+        }
+        BuildManifest manifest = new BuildManifest();
+        manifest.setCompiler(compilerIdentity());
+        manifest.addArguments(optionArguments());
+        manifest.addArguments(Arrays.asList("encoding", encoding));
+        Collection<File> inputs;
+        if (project != null) {
+            manifest.addArguments(Arrays.asList("--project", project.getAbsolutePath()));
+            inputs = projectInputs();
+        } else {
+            if (out != null) {
+                manifest.addArguments(Arrays.asList("--out", out.getAbsolutePath()));
+            } else {
+                manifest.addArguments(Arrays.asList("--outDir", targetDirectory.getAbsolutePath()));
+                if (transpileOnly && !useTsc) {
+                    manifest.addArguments(Arrays.asList("transpileOnly"));
+                }
+            }
+            inputs = FileUtils.listFiles(sourceDirectory, new String[] {"ts"}, true);
+        }
+        try {
+            for (File input : inputs) {
+                manifest.addInput(input, previous);
+            }
+            for (File dependency : upstreamDependencies(inputs, project == null ? sourceDirectory : projectDirectory())) {
+                File fingerprintFile = DeclarationFingerprint.find(dependency);
+                String fingerprint = fingerprintFile != null ? DeclarationFingerprint.read(fingerprintFile) : null;
+                if (fingerprint != null) {
+                    manifest.addUpstream(fingerprintFile, fingerprint);
+                } else {
+                    manifest.addInput(dependency, previous);
+                }
+            }
         } catch (IOException e) {
             throw createMojoExecutionException(e);
         }
-        
+        return manifest;
+    }
+
+    /**
+     * @return the tsconfig.json file and the sources it compiles, or every
+     *         TypeScript file of the project directory if it cannot be read
+     */
+    private Collection<File> projectInputs() {
+        TsConfig config = readTsConfig();
+        if (config != null) {
+            List<File> inputs = new ArrayList<File>();
+            inputs.add(config.getFile());
+            for (File file : config.getInputFiles()) {
+                if (file.isFile()) {
+                    inputs.add(file);
+                }
+            }
+            return inputs;
+        }
+        File projectDir = projectDirectory();
+        final File buildDir = buildManifest.getAbsoluteFile().getParentFile();
+        IOFileFilter dirs = new IOFileFilter() {
+            public boolean accept(File file) {
+                return !file.getName().equals("node_modules") && !file.getAbsoluteFile().equals(buildDir);
+            }
+
+            public boolean accept(File dir, String name) {
+                return accept(new File(dir, name));
+            }
+        };
+        IOFileFilter files = FileFilterUtils.or(FileFilterUtils.suffixFileFilter(".ts"),
+                FileFilterUtils.suffixFileFilter(".tsx"), FileFilterUtils.nameFileFilter("tsconfig.json"));
+        return FileUtils.listFiles(projectDir, files, dirs);
+    }
+
+    /**
+     * @return the hash of the built-in compiler, or the path and version of
+     *         the tsc executable, so that upgrading the compiler outdates
+     *         the manifest
+     */
+    private String compilerIdentity() throws MojoExecutionException {
+        if (useTsc) {
+            String executable = resolveTscExecutable();
+            if (executable != null) {
+                return "executable " + new File(executable).getAbsolutePath() + " " + tscVersion(executable);
+            }
+        }
+        String hash = compilerResourcesHash;
+        if (hash == null) {
+            MessageDigest digest = Checksums.newDigest();
+            try {
+                for (String resource : COMPILER_RESOURCES) {
+                    Checksums.update(digest, resource + " "
+                            + Checksums.sha1(TscMojo.class.getClassLoader().getResourceAsStream(resource)) + "\n");
+                }
+            } catch (IOException e) {
+                throw createMojoExecutionException(e);
+            }
+            hash = compilerResourcesHash = Checksums.toHex(digest.digest());
+        }
+        return "tsc.js " + hash;
+    }
+
+    /**
+     * Runs <code>tsc --version</code> once per executable and modification
+     * of it in the build.
+     */
+    private String tscVersion(String executable) throws MojoExecutionException {
+        File file = new File(executable);
+        String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+        String version = TSC_VERSIONS.get(key);
+        if (version == null) {
+            try {
+                Process process = new ProcessBuilder(executable, "--version").redirectErrorStream(true).start();
+                version = IOUtils.toString(process.getInputStream()).trim();
+                if (process.waitFor() != 0) {
+                    version = null;
+                }
+            } catch (IOException e) {
+                getLog().debug("Cannot run '" + executable + " --version'", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException(e.getMessage());
+            }
+            if (version == null) {
+                // never equal to the recorded one, so nothing is skipped
+                return "unknown version " + System.currentTimeMillis();
+            }
+            TSC_VERSIONS.put(key, version);
+        }
+        return version;
+    }
+
+    private File projectDirectory() {
+        return project.isDirectory() ? project : project.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * @return the parsed tsconfig.json, or null if it cannot be read, in which
+     *         case the project directory is scanned instead
+     */
+    private TsConfig readTsConfig() {
+        try {
+            return TsConfig.read(project, encoding);
+        } catch (IOException e) {
+            getLog().warn("Cannot read " + project + ", using every TypeScript file of its directory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the files outside the base directory that the sources import
+     *         or reference, such as the declarations of other modules, and
+     *         the files these import or reference in turn
+     */
+    private Collection<File> upstreamDependencies(Collection<File> sources, File baseDir) throws MojoExecutionException {
+        DependencyGraph graph = new DependencyGraph(encoding);
+        List<File> scripts = new ArrayList<File>();
+        for (File source : sources) {
+            if (source.getName().endsWith(".ts") || source.getName().endsWith(".tsx")) {
+                updateDependencyGraph(graph, source);
+                scripts.add(source);
+            }
+        }
+        String prefix = baseDir.getAbsoluteFile().toPath().normalize() + File.separator;
+        Set<File> upstream = new LinkedHashSet<File>();
+        boolean grown = true;
+        while (grown) {
+            // the files outside reference and import further files in turn
+            grown = false;
+            for (File file : graph.dependenciesOf(scripts)) {
+                if (!file.getPath().startsWith(prefix) && file.isFile() && upstream.add(file)) {
+                    updateDependencyGraph(graph, file);
+                    grown = true;
+                }
+            }
+        }
+        return upstream;
+    }
+
+    /**
+     * Publishes the fingerprint of the emitted declaration files for the
+     * modules compiling against them.
+     */
+    private void publishDeclarationFingerprint() throws MojoExecutionException {
+        if (failed) {
+            return;
+        }
+        File outFile = out;
+        File outDir = targetDirectory;
+        if (project != null) {
+            TsConfig config = readTsConfig();
+            if (config == null || !config.isDeclaration()) {
+                return;
+            }
+            outFile = config.getOutFile();
+            outDir = config.getOutDir();
+        } else if (!declaration) {
+            return;
+        }
+        try {
+            if (outFile != null) {
+                File dts = new File(outFile.getPath().replaceFirst("\\.js$", "") + ".d.ts");
+                if (dts.isFile()) {
+                    DeclarationFingerprint.write(dts.getAbsoluteFile().getParentFile(), Collections.singleton(dts));
+                }
+            } else if (outDir != null && outDir.isDirectory()) {
+                DeclarationFingerprint.write(outDir, FileUtils.listFiles(outDir,
+                        FileFilterUtils.suffixFileFilter(".d.ts"), TrueFileFilter.INSTANCE));
+            }
+        } catch (IOException e) {
+            throw createMojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Records the outputs and stores the manifest, unless the compile
+     * reported errors.
+     */
+    private void writeBuildManifest(BuildManifest manifest) {
+        if (manifest == null || failed) {
+            return;
+        }
         if (project == null) {
-            if (targetDirectory == null) {
-                targetDirectory = new File("target/ts");
+            addOutputs(manifest, out, targetDirectory, null);
+        } else {
+            TsConfig config = readTsConfig();
+            if (config != null) {
+                addOutputs(manifest, config.getOutFile(), config.getOutDir(), config.getInputFiles());
             }
-            if (sourceDirectory == null) {
-                sourceDirectory = new File("src/main/ts");
+        }
+        try {
+            manifest.write(buildManifest);
+        } catch (IOException e) {
+            getLog().warn("Cannot write " + buildManifest + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the build cache, or null if it is not used
+     */
+    private BuildCache getBuildCache(BuildManifest manifest) {
+        if (manifest == null || useTsc || buildCache == null || buildCache.getPath().length() == 0) {
+            return null;
+        }
+        return new BuildCache(buildCache, buildCacheSize * 1024 * 1024);
+    }
+
+    /**
+     * @return true if the outputs were restored from the build cache, false
+     *         if they have to be compiled
+     */
+    private boolean restoreOutputs(BuildCache cache, String key) {
+        try {
+            int restored = cache.restore(key, baseDirectory());
+            if (restored >= 0) {
+                getLog().info(String.format("Restored %s output file(s) from the build cache", restored));
+                return true;
+            }
+            getLog().debug("No build cache entry " + key);
+        } catch (IOException e) {
+            getLog().warn("Cannot restore the outputs from the build cache, compiling them: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void storeOutputs(BuildCache cache, String key, BuildManifest manifest) {
+        List<File> outputs = new ArrayList<File>();
+        for (File output : manifest.getOutputs()) {
+            // local to this build, published again after a restore
+            if (!output.getName().equals(DeclarationFingerprint.FILE_NAME)) {
+                outputs.add(output);
+            }
+        }
+        if (outputs.isEmpty()) {
+            return;
+        }
+        try {
+            if (!cache.store(key, baseDirectory(), outputs)) {
+                getLog().debug("Outputs outside of " + baseDirectory() + " are not cached");
+            }
+        } catch (IOException e) {
+            getLog().warn("Cannot store the outputs in the build cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the concatenated output file, or all files of the output
+     * directory, or else the outputs next to each source.
+     */
+    private static void addOutputs(BuildManifest manifest, File outFile, File outDir, List<File> sources) {
+        if (outFile != null) {
+            String base = outFile.getPath().replaceFirst("\\.js$", "");
+            manifest.addOutput(outFile);
+            manifest.addOutput(new File(outFile.getPath() + ".map"));
+            manifest.addOutput(new File(base + ".d.ts"));
+        } else if (outDir != null) {
+            if (outDir.isDirectory()) {
+                for (File output : FileUtils.listFiles(outDir, null, true)) {
+                    manifest.addOutput(output);
+                }
+            }
+        } else if (sources != null) {
+            for (File source : sources) {
+                if (!DependencyGraph.isDeclaration(source)) {
+                    String base = source.getPath().replaceFirst("\\.tsx?$", "");
+                    manifest.addOutput(new File(base + ".js"));
+                    manifest.addOutput(new File(base + ".js.map"));
+                    manifest.addOutput(new File(base + ".d.ts"));
+                }
+            }
+        }
+    }
+
+    private void checkForChanges() throws MojoExecutionException {
+        // a project is watched in the directories of its inputs, and changes are matched against them
+        final File watchDirectory = project != null ? projectDirectory() : sourceDirectory;
+        ChangeMonitor monitor = project != null
+                ? WatchServiceChangeMonitor.create(watchDirectory, "**/*", projectDirectoryFilter(), pollTime)
+                : WatchServiceChangeMonitor.create(watchDirectory, "**/*.ts", pollTime);
+        if (monitor instanceof FileSetChangeMonitor) {
+            getLog().info("Waiting for changes to " + watchDirectory + " polling every " + pollTime + " millis");
+        } else {
+            getLog().info("Waiting for changes to " + watchDirectory);
+        }
+        if (session != null) {
+            session.retainMetadata(watchDirectory);
+        }
+        Set<File> projectFiles = project != null ? normalize(projectInputs()) : null;
+        watchedConfig = project != null ? readTsConfig() : null;
+        DependencyGraph graph = null;
+        if (project == null && out == null) {
+            graph = new DependencyGraph(encoding);
+            for (File file : FileUtils.listFiles(sourceDirectory, new String[] {"ts"}, true)) {
+                updateDependencyGraph(graph, file);
+            }
+        }
+        CompileScheduler.Filter filter = null;
+        if (project != null) {
+            // the outputs written into the project directory are not worth a compile
+            filter = new CompileScheduler.Filter() {
+                public boolean accept(String path) {
+                    TsConfig config = watchedConfig;
+                    File file = normalize(new File(watchDirectory, path));
+                    return config == null || file.equals(config.getFile()) || config.isInput(file);
+                }
+            };
+        }
+        CompileScheduler scheduler = new CompileScheduler(monitor, quietPeriod, filter, new Runnable() {
+            public void run() {
+                CancelToken token = cancelToken;
+                if (token != null) {
+                    token.cancel();
+                }
+            }
+        });
+        TscDaemon daemon = startTscDaemon();
+        Collection<File> daemonFiles = daemon != null ? watchedFiles() : null;
+        scheduler.start();
+        try {
+            while (true) {
+                List<String> modified = scheduler.nextChanges();
+                if (daemon != null) {
+                    if (!daemon.isAlive()) {
+                        getLog().warn("tsc daemon exited, compiling on each change instead");
+                        daemon = null;
+                    } else {
+                        // tsc --watch picks up modifications itself, but not new or deleted files
+                        Collection<File> files = watchedFiles();
+                        if (!files.equals(daemonFiles)) {
+                            daemon.stop();
+                            daemon = startTscDaemon();
+                            daemonFiles = files;
+                        }
+                        continue;
+                    }
+                }
+                // before the scheduler may cancel, so no cancel is lost
+                cancelToken = new CancelToken();
+                scheduler.compiling();
+                try {
+                    if (project != null) {
+                        Set<File> inputs = normalize(projectInputs());
+                        List<File> changed = new ArrayList<File>();
+                        for (String path : modified) {
+                            File file = normalize(new File(watchDirectory, path));
+                            if (projectFiles.contains(file) || inputs.contains(file)) {
+                                changed.add(file);
+                            }
+                        }
+                        projectFiles = inputs;
+                        watchedConfig = readTsConfig();
+                        if (!changed.isEmpty()) {
+                            if (session != null) {
+                                session.invalidate(changed);
+                            }
+                            doCompileTsConfig();
+                        }
+                    } else if (modified.size() > 0) {
+                        if (session != null) {
+                            List<File> files = new ArrayList<File>();
+                            for (String path : modified) {
+                                files.add(new File(sourceDirectory, path));
+                            }
+                            session.invalidate(files);
+                        }
+                        if (graph != null) {
+                            doCompileModifiedFiles(graph, modified);
+                        } else {
+                            doCompileFiles(true);
+                        }
+                    }
+                } catch (MojoExecutionException e) {
+                    // already logged, keep watching
+                } finally {
+                    cancelToken = null;
+                    if (scheduler.compiled(modified)) {
+                        getLog().info("Sources changed during the compile, compiling again once quiet");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            getLog().info("Caught interrupt, quitting.");
+        } finally {
+            scheduler.close();
+            if (daemon != null) {
+                daemon.stop();
+            }
+        }
+    }
+
+    /**
+     * @return a filter accepting the directories that may hold inputs of the
+     *         project, as configured in tsconfig.json when it is asked, or
+     *         all but <code>node_modules</code> if the file cannot be read
+     */
+    private FileFilter projectDirectoryFilter() {
+        final File configFile = project.isDirectory() ? new File(project, "tsconfig.json") : project;
+        return new FileFilter() {
+            private String stamp;
+            private TsConfig config;
+
+            public boolean accept(File dir) {
+                String current = configFile.lastModified() + ":" + configFile.length();
+                if (!current.equals(stamp)) {
+                    config = readTsConfig();
+                    stamp = current;
+                }
+                return config != null ? config.mayContainInputs(dir) : !dir.getName().equals("node_modules");
+            }
+        };
+    }
+
+    /**
+     * Starts 'tsc --watch' on the current sources when the daemon is enabled
+     * and the executable is available.
+     *
+     * @return the running daemon, or null to compile on each change
+     */
+    private TscDaemon startTscDaemon() throws MojoExecutionException {
+        if (!useTsc || !tscDaemon) {
+            return null;
+        }
+        String executable = resolveTscExecutable();
+        if (executable == null) {
+            return null;
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(executable);
+        if (project != null) {
+            command.add("--project");
+            command.add(project.getAbsolutePath());
+        } else if (out != null) {
+            command.addAll(optionArguments());
+            command.add("--out");
+            command.add(out.getPath());
+            for (File file : sourceFiles()) {
+                command.add(sourceFilePath(file));
+            }
+        } else {
+            command.addAll(singleFileArguments(sourceFiles()));
+        }
+        command.add("--watch");
+
+        getLog().info("Starting tsc daemon: " + stringListToString(command));
+        TscDaemon daemon = new TscDaemon(command, workingDirectory(), getLog());
+        try {
+            daemon.start();
+        } catch (IOException e) {
+            if (useTscOnly) {
+                throw createMojoExecutionException(e);
+            }
+            getLog().info("Unable to start tsc daemon - compiling on each change instead");
+            return null;
+        }
+        return daemon;
+    }
+
+    private void updateDependencyGraph(DependencyGraph graph, File file) throws MojoExecutionException {
+        try {
+            if (file.isFile()) {
+                graph.update(file);
+            } else {
+                graph.remove(file);
+            }
+        } catch (IOException e) {
+            throw createMojoExecutionException(e);
+        }
+    }
+
+    /**
+     * @return the files whose addition or removal restarts the tsc daemon
+     */
+    private Collection<File> watchedFiles() {
+        return project != null ? new ArrayList<File>(projectInputs()) : sourceFiles();
+    }
+
+    private static Set<File> normalize(Collection<File> files) {
+        Set<File> normalized = new HashSet<File>();
+        for (File file : files) {
+            normalized.add(normalize(file));
+        }
+        return normalized;
+    }
+
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    /**
+     * Checks and emits only the modified files and the files depending on
+     * them. A change to a global script can affect any file, so it still
+     * checks and emits everything, reusing the unchanged parsed files.
+     */
+    private void doCompileModifiedFiles(DependencyGraph graph, List<String> modified) throws MojoExecutionException {
+        List<File> changed = new ArrayList<File>();
+        boolean global = false;
+        for (String path : modified) {
+            File file = new File(sourceDirectory, path);
+            global |= graph.isGlobalScript(file);
+            updateDependencyGraph(graph, file);
+            global |= graph.isGlobalScript(file);
+            changed.add(file);
+        }
+
+        if (transpileOnly && !useTsc) {
+            // every file is transpiled on its own, so its dependents are not affected
+            List<File> transpiled = new ArrayList<File>();
+            for (File file : changed) {
+                if (file.isFile() && !DependencyGraph.isDeclaration(file)) {
+                    transpiled.add(file);
+                    getLog().info(String.format("Compiling: %s", file.getPath()));
+                }
+            }
+            try {
+                transpile(transpiled);
+            } catch (TscInvocationException e) {
+                logFailure(e);
             }
-
-            sourceDirectory.mkdirs();
-            targetDirectory.mkdirs();
-            
-            doCompileFiles(false);
-
-        } else {
-            
-            // Use the tsconfig.json.
-            doCompileTsConfig();
+            return;
         }
 
-        if (watch) {
-            watching = true;
-            getLog().info("Waiting for changes to " + sourceDirectory + " polling every " + pollTime + " millis");
-            checkForChangesEvery(pollTime);
+        List<File> files = sourceFiles();
+        if (global) {
+            doCompileSingleFiles(files);
+            return;
         }
-    }
 
-    private void checkForChangesEvery(long ms) throws MojoExecutionException {
-        FileSetChangeMonitor monitor = new FileSetChangeMonitor(sourceDirectory, "**/*.ts");
-        try {
-            while (true) {
-                Thread.sleep(ms);
-                List<String> modified = monitor.getModifiedFilesSinceLastTimeIAsked();
-                if (modified.size() > 0) {
-                    // TODO ideally we'd just pass in the files to compile here...
-                    doCompileFiles(true);
-                }
+        List<String> affected = new ArrayList<String>();
+        for (File file : graph.dependentsOf(changed)) {
+            if (file.isFile() && !file.getName().endsWith(".d.ts")) {
+                affected.add(file.getPath());
             }
-        } catch (InterruptedException e) {
-            getLog().info("Caught interrupt, quitting.");
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        getLog().info(String.format("Recompiling %s of %s file(s)", affected.size(), files.size()));
+        for (String path : affected) {
+            getLog().info(String.format("Compiling: %s", path));
+        }
+        try {
+            tscAffected(singleFileArguments(files), affected);
+        } catch (TscInvocationException e) {
+            logFailure(e);
         }
     }
 
     private void doCompileFiles(boolean checkTimestamp) throws MojoExecutionException {
+        List<File> files = sourceFiles();
+        if (out != null) {
+            doCompileAllFiles(checkTimestamp, files);
+        } else {
+            doCompileSingleFiles(files);
+        }
+    }
+
+    private List<File> sourceFiles() {
         Collection<File> allTsFiles = FileUtils.listFiles(sourceDirectory, new String[] {"ts"}, true);
         
         // Filter out .d.ts files. We don't need to compile these ones.
@@ -249,12 +1120,7 @@ public class TscMojo extends AbstractMojo
                 files.add(f);
             }
         }
-        
-        if (out != null) {
-            doCompileAllFiles(checkTimestamp, files);
-        } else {
-            doCompileSingleFiles(files);
-        }
+        return files;
     }
 
     private void doCompileAllFiles(boolean checkTimestamp, Collection<File> files) throws MojoExecutionException {
@@ -268,31 +1134,36 @@ public class TscMojo extends AbstractMojo
             params.add(out.getPath());
 
             // find the latest modification among the source files
-            // and add files to an ASCII file
-            File modifiedFilesFile = new File("modifiedFiles.txt");
-            PrintWriter writer = new PrintWriter(modifiedFilesFile, "UTF-8");
+            // and add files to an ASCII file of this execution, so
+            // modules built in parallel do not overwrite each other's
+            File buildDirectory = buildDirectory();
+            buildDirectory.mkdirs();
+            File modifiedFilesFile = File.createTempFile("ts-sources", ".txt", buildDirectory);
+            try {
+                PrintWriter writer = new PrintWriter(modifiedFilesFile, "UTF-8");
 
-            Long lastModified = 0l;
-            for (File file : files) {
-                if (file.lastModified() > lastModified) {
-                    lastModified = file.lastModified();
+                Long lastModified = 0l;
+                for (File file : files) {
+                    if (file.lastModified() > lastModified) {
+                        lastModified = file.lastModified();
+                    }
+                    writer.println(file.getPath());
                 }
-                writer.println(file.getPath());
-            }
-            writer.close();
+                writer.close();
 
-            // add the ASCII file as @<file> parameter
-            params.add("@"+"modifiedFiles.txt");
+                // add the ASCII file as @<file> parameter
+                params.add("@" + modifiedFilesFile.getPath());
 
-            if (!out.exists() || !checkTimestamp || lastModified > out.lastModified()) {
-                try {                    
-                    tsc(params);
-                } catch (TscInvocationException e) {
-                    getLog().error(e.getMessage());
-                    if (getLog().isDebugEnabled()) {
-                        getLog().debug(e);
+                if (!out.exists() || !checkTimestamp || lastModified > out.lastModified()) {
+                    try {
+                        tsc(params);
+                    } catch (TscInvocationException e) {
+                        failed = true;
+                        logFailure(e);
                     }
                 }
+            } finally {
+                modifiedFilesFile.delete();
             }
         } catch (IOException e) {
             throw createMojoExecutionException(e);
@@ -307,25 +1178,14 @@ public class TscMojo extends AbstractMojo
                 getLog().info("Searching directory " + sourceDirectory.getCanonicalPath());
             }
             
-            List<String> args = new ArrayList<String>();
-            args.addAll(optionArguments());
-            args.add("--outDir");
-            args.add(targetDirectory.getPath());
             for (File file : files) {
-                String sourcePath = file.getPath().substring(sourceDirectory.getPath().length());
-                File sourceFile = new File(sourceDirectory, sourcePath).getAbsoluteFile();
-                String sourceFilePath = sourceFile.getPath();
-                getLog().info(String.format("Compiling: %s", sourceFilePath));
-                args.add(sourceFilePath);
+                getLog().info(String.format("Compiling: %s", sourceFilePath(file)));
                 compiledFiles++;
             }
             try {
-                tsc(args);
+                tscSingleFiles(files);
             } catch (TscInvocationException e) {
-                getLog().error(e.getMessage());
-                if (getLog().isDebugEnabled()) {
-                    getLog().debug(e);
-                }
+                logFailure(e);
                 throw new MojoExecutionException(e.getMessage(), e);
             }
             
@@ -339,61 +1199,214 @@ public class TscMojo extends AbstractMojo
         }
     }
     
-    private void doCompileTsConfig() throws MojoExecutionException {
-        List<String> args = new ArrayList<String>();
-        args.add("--project");
-        args.add(project.getAbsolutePath());
-
-        try {
-            tsc(args);
-        } catch (TscInvocationException e) {
-            getLog().error(e.getMessage());
-            if (getLog().isDebugEnabled()) {
-                getLog().debug(e);
+    /**
+     * Compiles the files in independent groups on the worker pool when more
+     * than one compile thread is configured, or all at once otherwise.
+     */
+    private void tscSingleFiles(Collection<File> files) throws TscInvocationException, MojoExecutionException {
+        if (transpileOnly && !useTsc) {
+            transpile(files);
+            return;
+        }
+        if (compileThreads > 1 && !useTsc && files.size() > 1) {
+            DependencyGraph graph = new DependencyGraph(encoding);
+            for (File file : FileUtils.listFiles(sourceDirectory, new String[] {"ts"}, true)) {
+                updateDependencyGraph(graph, file);
+            }
+            List<List<File>> groups = graph.independentGroups(files);
+            if (groups.size() > 1) {
+                List<String> options = groupArguments(graph, files);
+                List<List<String>> compiles = new ArrayList<List<String>>();
+                for (List<File> group : groups) {
+                    List<String> args = new ArrayList<String>(options);
+                    for (File file : group) {
+                        args.add(sourceFilePath(file));
+                    }
+                    getLog().debug("Group command: node tsc.js " + stringListToString(args));
+                    compiles.add(args);
+                }
+                getLog().info(String.format("Compiling %s independent group(s) on %s thread(s)",
+                        groups.size(), Math.min(compileThreads, groups.size())));
+                DiagnosticCollector diagnostics = new DiagnosticCollector(maxDiagnostics, maxErrors);
+                try {
+                    getWorkerPool().compile(compiles, encoding, diagnostics);
+                } finally {
+                    diagnostics.log(getLog());
+                }
+                return;
             }
-            throw new MojoExecutionException(e.getMessage(), e);
         }
+        tsc(singleFileArguments(files));
     }
 
-    private void compileScripts() throws IOException {
+    /**
+     * Transpiles the files on their own, split over the compile threads in
+     * parts of about the same size. The root directory is the one tsc would
+     * compute for all source files, so the outputs land where a full compile
+     * writes them, even when only some files are transpiled.
+     */
+    private void transpile(Collection<File> files) throws TscInvocationException, MojoExecutionException {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<String> options = new ArrayList<String>(optionArguments());
+        options.add("--outDir");
+        options.add(targetDirectory.getPath());
+        String rootDir = null;
+        for (File file : sourceFiles()) {
+            String dir = new File(sourceFilePath(file)).getParent();
+            rootDir = rootDir == null ? dir : commonDirectory(rootDir, dir);
+        }
+        if (rootDir != null) {
+            options.add("--rootDir");
+            options.add(rootDir);
+        }
+        List<List<String>> transpiles = new ArrayList<List<String>>();
+        for (List<File> part : partition(files, Math.max(1, compileThreads))) {
+            List<String> args = new ArrayList<String>(options);
+            for (File file : part) {
+                args.add(sourceFilePath(file));
+            }
+            transpiles.add(args);
+        }
+
+        DiagnosticCollector diagnostics = new DiagnosticCollector(maxDiagnostics, maxErrors);
         try {
-            Context.enter();
-            Context ctx = Context.getCurrentContext();
-            ctx.setOptimizationLevel(-1);
-            globalScope = ctx.initStandardObjects();
-            RequireBuilder require = new RequireBuilder();
-            require.setSandboxed(false);
-            require.setModuleScriptProvider(new SoftCachingModuleScriptProvider(new ClasspathModuleSourceProvider()));
-            require.createRequire(ctx, globalScope).install(globalScope);
-            nodeScript = compile(ctx,"node.js");
-            fileWedgeScript = compile(ctx, "filewedge.js");
-            tscScript = compile(ctx,"tsc.js");
+            if (transpiles.size() > 1) {
+                getLog().info(String.format("Transpiling %s file(s) on %s thread(s)", files.size(), transpiles.size()));
+                getWorkerPool().transpile(transpiles, encoding, diagnostics);
+            } else {
+                TscSession session = getSession();
+                getLog().info("Using " + session.getEngineName() + " JS Engine to transpile: " + stringListToString(transpiles.get(0)));
+                session.setDiagnostics(diagnostics);
+                try {
+                    session.transpile(transpiles.get(0), encoding);
+                } finally {
+                    session.setDiagnostics(null);
+                }
+            }
         } finally {
-            Context.exit();
+            diagnostics.log(getLog());
+        }
+    }
 
+    /**
+     * Splits the files into at most <code>count</code> parts of about the
+     * same total size, placing the largest files first.
+     */
+    private static List<List<File>> partition(Collection<File> files, int count) {
+        List<File> sorted = new ArrayList<File>(files);
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(b.length(), a.length());
+            }
+        });
+        List<List<File>> parts = new ArrayList<List<File>>();
+        long[] sizes = new long[Math.min(count, sorted.size())];
+        for (int i = 0; i < sizes.length; i++) {
+            parts.add(new ArrayList<File>());
+        }
+        for (File file : sorted) {
+            int smallest = 0;
+            for (int i = 1; i < sizes.length; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            parts.get(smallest).add(file);
+            sizes[smallest] += file.length();
         }
-        Context.enter();
+        return parts;
     }
 
-    private Script compile(Context context,String resource) throws IOException {
-        InputStream stream =  TscMojo.class.getClassLoader().getResourceAsStream(resource);
-        if (stream==null){
-            throw new FileNotFoundException("Resource open error: "+resource);
+    /**
+     * The arguments shared by all groups. The root directory is the one tsc
+     * would compute for all files together, so each group writes its outputs
+     * where a single compile would, and the global declaration files are
+     * loaded by every group, as their declarations are visible to all files.
+     */
+    private List<String> groupArguments(DependencyGraph graph, Collection<File> files) {
+        List<String> args = new ArrayList<String>();
+        args.addAll(optionArguments());
+        args.add("--outDir");
+        args.add(targetDirectory.getPath());
+
+        String rootDir = null;
+        List<String> declarations = new ArrayList<String>();
+        for (File file : graph.dependenciesOf(files)) {
+            if (DependencyGraph.isDeclaration(file)) {
+                if (graph.isGlobalScript(file) && file.isFile()) {
+                    declarations.add(file.getPath());
+                }
+            } else if (file.isFile()) {
+                rootDir = rootDir == null ? file.getParent() : commonDirectory(rootDir, file.getParent());
+            }
         }
-        try {
-            return context.compileReader(new InputStreamReader(stream), resource, 1, null);
-        } catch (IOException e){
-            throw new IOException("Resource read error: "+resource);
-        } finally {
-            try {
-                stream.close();
-            } catch (IOException e){
-                throw new IOException("Resource close error: "+resource);
+        if (rootDir != null) {
+            args.add("--rootDir");
+            args.add(rootDir);
+        }
+        args.addAll(declarations);
+        return args;
+    }
+
+    private static String commonDirectory(String a, String b) {
+        String[] as = a.split(Pattern.quote(File.separator), -1);
+        String[] bs = b.split(Pattern.quote(File.separator), -1);
+        StringBuilder common = new StringBuilder();
+        for (int i = 0; i < as.length && i < bs.length && as[i].equals(bs[i]); i++) {
+            if (i > 0) {
+                common.append(File.separator);
             }
-            stream = null;
+            common.append(as[i]);
         }
+        return common.length() > 0 ? common.toString() : File.separator;
     }
-    
+
+    private List<String> singleFileArguments(Collection<File> files) {
+        List<String> args = new ArrayList<String>();
+        args.addAll(optionArguments());
+        args.add("--outDir");
+        args.add(targetDirectory.getPath());
+        for (File file : files) {
+            args.add(sourceFilePath(file));
+        }
+        return args;
+    }
+
+    private String sourceFilePath(File file) {
+        String sourcePath = file.getPath().substring(sourceDirectory.getPath().length());
+        return new File(sourceDirectory, sourcePath).getAbsolutePath();
+    }
+
+    /**
+     * Logs a failed compile, or a cancelled one as superseded by newer
+     * changes.
+     */
+    private void logFailure(TscInvocationException e) {
+        if (e instanceof TscCancelledException) {
+            getLog().info(e.getMessage());
+        } else {
+            getLog().error(e.getMessage());
+        }
+        if (getLog().isDebugEnabled()) {
+            getLog().debug(e);
+        }
+    }
+
+    private void doCompileTsConfig() throws MojoExecutionException {
+        List<String> args = new ArrayList<String>();
+        args.add("--project");
+        args.add(project.getAbsolutePath());
+
+        try {
+            tsc(args);
+        } catch (TscInvocationException e) {
+            logFailure(e);
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
     private List<String> optionArguments() {
         List<String> options = new ArrayList<String>();
 
@@ -438,104 +1451,159 @@ public class TscMojo extends AbstractMojo
     }    
         
     private void tsc(List<String> args) throws TscInvocationException, MojoExecutionException {
+        CancelToken.check(cancelToken);
         if (useTscBinary(args)) {
             return;
         }
 
+        TscSession session = getSession();
+        getLog().info("Using " + session.getEngineName() + " JS Engine to run command: node tsc.js " + stringListToString(args));
+        DiagnosticCollector diagnostics = new DiagnosticCollector(maxDiagnostics, maxErrors);
+        session.setDiagnostics(diagnostics);
         try {
-            Context.enter();
-            Context ctx = Context.getCurrentContext();
-
-            nodeScript.exec(ctx, globalScope);
-            fileWedgeScript.exec(ctx, globalScope);
-            
-            NativeObject processObject = (NativeObject)globalScope.get("process");
-            NativeArray argv = (NativeArray)processObject.get("argv");
-            argv.defineProperty("length", 0, ScriptableObject.EMPTY);
-            int i = 0;
-            argv.put(i++, argv, javaStringToJsString(ctx, "node"));
-            argv.put(i++, argv, javaStringToJsString(ctx,"tsc.js"));
+            session.compile(args, encoding);
+        } finally {
+            session.setDiagnostics(null);
+            diagnostics.log(getLog());
+        }
+    }
 
-            for (String s:args){
-                argv.put(i++, argv, javaStringToJsString(ctx, s));
-            }
+    /**
+     * Like {@link #tsc(List)}, but only checks and emits the affected files
+     * when running the built-in compiler. The tsc executable always compiles
+     * everything.
+     */
+    private void tscAffected(List<String> args, List<String> affected) throws TscInvocationException, MojoExecutionException {
+        CancelToken.check(cancelToken);
+        if (useTscBinary(args)) {
+            return;
+        }
 
-            processObject.defineProperty("encoding", javaStringToJsString(ctx, encoding), ScriptableObject.READONLY);
+        TscSession session = getSession();
+        DiagnosticCollector diagnostics = new DiagnosticCollector(maxDiagnostics, maxErrors);
+        session.setDiagnostics(diagnostics);
+        try {
+            session.compileAffected(args, affected, encoding);
+        } finally {
+            session.setDiagnostics(null);
+            diagnostics.log(getLog());
+        }
+    }
 
-            NativeObject mainModule = (NativeObject) processObject.get("mainModule");
-            
-            globalScope.defineProperty("__filename", javaStringToJsString(ctx, "___classloader_resource___/tsc.js"), ScriptableObject.READONLY);
-            mainModule.defineProperty("filename", javaStringToJsString(ctx, "___classloader_resource___/tsc.js"), ScriptableObject.READONLY);
-            
-            getLog().info("Using Rhino JS Engine to run command: " + nativeArrayToString(argv));
-
-            tscScript.exec(ctx, globalScope);
-        } catch (JavaScriptException e){
-            if (e.getValue() instanceof NativeJavaObject){
-                NativeJavaObject njo = (NativeJavaObject)e.getValue();
-                Object o = njo.unwrap();
-                if (o instanceof ProcessExit){
-                    ProcessExit pe = (ProcessExit)o;
-                    if (pe.getStatus()!=0){
-                        throw new TscInvocationException("Process Error: "+pe.getStatus(), e);
-                    }
-                } else {
-                    throw new TscInvocationException("JavaScript Error: " + e.details() +  "\nJS stack:\n"+e.getScriptStackTrace(), e);
+    private TscSession getSession() throws TscInvocationException, MojoExecutionException {
+        if (session != null) {
+            session.setCancelToken(cancelToken);
+        } else {
+            try {
+                session = SharedTscSessions.acquire(engine, scriptClassCache(), metrics);
+                session.setWorkingDirectory(workingDirectory());
+                session.setOutput(compilerOutput());
+                session.setOutputWriter(outputWriter());
+                session.setCancelToken(cancelToken);
+                if (watching) {
+                    session.retainMetadata(project != null ? projectDirectory() : sourceDirectory);
                 }
-            } else {
-                throw new TscInvocationException("JavaScript Error: " + e.details() +  "\nJS stack:\n"+e.getScriptStackTrace(), e);
+            } catch (IOException e) {
+                throw createMojoExecutionException(e);
             }
-        } catch (RhinoException e){
-            getLog().error(e.getMessage());
-            throw new TscInvocationException("Rhino Error",e);
-        } finally {
-            org.mozilla.javascript.Context.exit();
         }
+        return session;
     }
 
-    Scriptable javaStringToJsString(Context ctx, String javaString) {
-        Object[] stringArgs = { javaString };
-        return ctx.newObject(globalScope, "String", stringArgs);
-    }    
+    private ScriptClassCache scriptClassCache() {
+        ScriptClassCache scripts = new ScriptClassCache(scriptCacheDirectory, optimizationLevel);
+        scripts.setLog(getLog());
+        return scripts;
+    }
+
+    private TscWorkerPool getWorkerPool() {
+        if (workerPool == null) {
+            workerPool = new TscWorkerPool(engine, scriptClassCache(), compileThreads, metrics,
+                    workingDirectory(), compilerOutput(), outputWriter());
+        }
+        workerPool.setCancelToken(cancelToken);
+        return workerPool;
+    }
 
     /**
-     * Format a native array of strings into one space separated string.
+     * @return the writer of the compiler outputs, or null to write them on
+     *         the compiler threads
      */
-    private static String nativeArrayToString(NativeArray narray) {
-        StringBuilder sb = new StringBuilder();
-        for (Object narray1 : narray) {
-            sb.append(narray1.toString());
-            sb.append(" ");
+    private OutputWriter outputWriter() {
+        if (outputWriter == null && outputThreads > 0) {
+            outputWriter = new OutputWriter(outputThreads);
         }
-        return sb.toString();
+        return outputWriter;
+    }
+
+    /**
+     * @return the directory of the module, against which the built-in
+     *         compiler and tsc resolve relative paths, or null outside of a
+     *         Maven build
+     */
+    private File workingDirectory() {
+        return mavenProject != null ? mavenProject.getBasedir() : null;
+    }
+
+    /**
+     * @return the directory against which the paths in the build cache are
+     *         relative
+     */
+    private File baseDirectory() {
+        File workingDirectory = workingDirectory();
+        return workingDirectory != null ? workingDirectory : new File("").getAbsoluteFile();
+    }
+
+    private File buildDirectory() {
+        return mavenProject != null ? new File(mavenProject.getBuild().getDirectory()) : new File("target");
+    }
+
+    /**
+     * @return the stream sending what the built-in compiler prints to the
+     *         log of this execution
+     */
+    private PrintStream compilerOutput() {
+        if (output == null) {
+            try {
+                output = new PrintStream(new LogOutputStream(getLog()), true, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return output;
     }
 
     private boolean useTscBinary(List<String> args) throws MojoExecutionException {
         if (useTsc) {
 
+            String executable = resolveTscExecutable();
+            if (executable == null) {
+                return false;
+            }
+
             // lets try execute the 'tsc' executable directly
             List<String> arguments = new ArrayList<String>();
-            // add command name as argument, "tsc" is default value
-            if(getTscExecutable()!=null && getTscExecutable().length()>0) {
-                arguments.add(getTscExecutable());
-            }
-            else {
-                arguments.add("tsc");
-            }
+            arguments.add(executable);
             arguments.addAll(optionArguments());
             arguments.addAll(args);
             
             getLog().info("Using external nodejs to run command: " + stringListToString(arguments));
 
             getLog().debug("About to execute command: " + arguments);
-            ProcessBuilder builder = new ProcessBuilder(arguments);
+            ProcessBuilder builder = new ProcessBuilder(arguments).directory(workingDirectory());
             try {
                 Process process = builder.start();
-                redirectOutput(process.getInputStream(), false);
-                redirectOutput(process.getErrorStream(), true);
+                // drain both pipes at once, so a full stderr never stalls tsc
+                DiagnosticCollector diagnostics = new DiagnosticCollector(maxDiagnostics);
+                Thread stdout = diagnostics.drain(process.getInputStream());
+                Thread stderr = diagnostics.drain(process.getErrorStream());
 
                 int value = process.waitFor();
+                stdout.join();
+                stderr.join();
+                diagnostics.log(getLog());
                 if (value != 0) {
+                    failed = true;
                     getLog().error("Failed to execute tsc. Return code: " + value);
                 } else {
                     getLog().debug("Compiled file successfully");
@@ -547,6 +1615,7 @@ public class TscMojo extends AbstractMojo
                 } else {
                     getLog().debug("IOException while running 'tsc' binary", e);
                     getLog().info("Unable to run 'tsc' binary - falling back to internal tsc compiler code");
+                    tscUnavailable = true;
                     return false;
                 }
             } catch (InterruptedException e) {
@@ -557,6 +1626,57 @@ public class TscMojo extends AbstractMojo
         return false;
     }
     
+    /**
+     * Looks the tsc executable up on the PATH once per mojo, so a missing
+     * binary is not looked for again on every compile.
+     *
+     * @return the executable to run, or null to use the built-in compiler
+     */
+    private String resolveTscExecutable() throws MojoExecutionException {
+        String name = getTscExecutable() != null && getTscExecutable().length() > 0 ? getTscExecutable() : "tsc";
+        if (resolvedTscExecutable == null && !tscUnavailable) {
+            resolvedTscExecutable = findExecutable(name);
+            if (resolvedTscExecutable == null) {
+                tscUnavailable = true;
+                if (!useTscOnly) {
+                    getLog().info("Unable to find '" + name + "' binary - falling back to internal tsc compiler code");
+                }
+            }
+        }
+        if (tscUnavailable) {
+            if (useTscOnly) {
+                throw new MojoExecutionException("Cannot run the '" + name + "' executable");
+            }
+            return null;
+        }
+        return resolvedTscExecutable;
+    }
+
+    /**
+     * @return the path of the executable, the name itself if it is a path, or
+     *         null if it is not on the PATH
+     */
+    private static String findExecutable(String name) {
+        if (name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0) {
+            return name;
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return name;
+        }
+        boolean windows = File.separatorChar == '\\';
+        String[] extensions = windows ? new String[] {"", ".cmd", ".exe", ".bat"} : new String[] {""};
+        for (String dir : path.split(Pattern.quote(File.pathSeparator))) {
+            for (String extension : extensions) {
+                File candidate = new File(dir, name + extension);
+                if (candidate.isFile() && (windows || candidate.canExecute())) {
+                    return candidate.getAbsolutePath();
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Format a list of strings into one space separated string.
      */
@@ -569,26 +1689,6 @@ public class TscMojo extends AbstractMojo
         return sb.toString();
     }
 
-    private void redirectOutput(InputStream is, boolean error) throws IOException {
-        try {
-            InputStreamReader isr = new InputStreamReader(is);
-            BufferedReader br = new BufferedReader(isr);
-            while (true) {
-                String line = br.readLine();
-                if (line == null) {
-                    break;
-                }
-                if (error) {
-                    getLog().error(line);
-                } else {
-                    getLog().info(line);
-                }
-            }
-        } finally {
-            is.close();
-        }
-    }
-
     private MojoExecutionException createMojoExecutionException(IOException e) {
         return new MojoExecutionException(e.getMessage());
     }
@@ -689,6 +1789,118 @@ public class TscMojo extends AbstractMojo
         this.mapRoot = mapRoot;
     }
     
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    public void setOptimizationLevel(int optimizationLevel) {
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    public File getScriptCacheDirectory() {
+        return scriptCacheDirectory;
+    }
+
+    public void setScriptCacheDirectory(File scriptCacheDirectory) {
+        this.scriptCacheDirectory = scriptCacheDirectory;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public File getBuildManifest() {
+        return buildManifest;
+    }
+
+    public void setBuildManifest(File buildManifest) {
+        this.buildManifest = buildManifest;
+    }
+
+    public int getCompileThreads() {
+        return compileThreads;
+    }
+
+    public void setCompileThreads(int compileThreads) {
+        this.compileThreads = compileThreads;
+    }
+
+    public boolean getTscDaemon() {
+        return tscDaemon;
+    }
+
+    public void setTscDaemon(boolean tscDaemon) {
+        this.tscDaemon = tscDaemon;
+    }
+
+    public int getMaxDiagnostics() {
+        return maxDiagnostics;
+    }
+
+    public void setMaxDiagnostics(int maxDiagnostics) {
+        this.maxDiagnostics = maxDiagnostics;
+    }
+
+    public boolean isTranspileOnly() {
+        return transpileOnly;
+    }
+
+    public void setTranspileOnly(boolean transpileOnly) {
+        this.transpileOnly = transpileOnly;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public File getMetricsFile() {
+        return metricsFile;
+    }
+
+    public void setMetricsFile(File metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    public File getBuildCache() {
+        return buildCache;
+    }
+
+    public void setBuildCache(File buildCache) {
+        this.buildCache = buildCache;
+    }
+
+    public long getBuildCacheSize() {
+        return buildCacheSize;
+    }
+
+    public void setBuildCacheSize(long buildCacheSize) {
+        this.buildCacheSize = buildCacheSize;
+    }
+
+    public long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    public int getOutputThreads() {
+        return outputThreads;
+    }
+
+    public void setOutputThreads(int outputThreads) {
+        this.outputThreads = outputThreads;
+    }
+
     public String getTscExecutable() {return tscExecutable;}
     public void setTscExecutable(String tscExecutable) {this.tscExecutable = tscExecutable;}
 
@@ -0,0 +1,101 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A TypeScript compiler loaded once into a JavaScript engine and driven
+ * through the node.js shims for each compile.
+ */
+public interface TscSession {
+
+    /**
+     * @return the name of the JavaScript engine running the compiler
+     */
+    String getEngineName();
+
+    /**
+     * Compiles with the given tsc command line arguments.
+     *
+     * @throws TscInvocationException if tsc exits with a non zero status or fails
+     */
+    void compile(List<String> args, String encoding) throws TscInvocationException;
+
+    /**
+     * Builds the program described by the tsc arguments, reusing the source
+     * files that did not change since the previous compile, but only checks
+     * and emits the affected files.
+     *
+     * @throws TscInvocationException if tsc exits with a non zero status or fails
+     */
+    void compileAffected(List<String> args, List<String> affectedFiles, String encoding) throws TscInvocationException;
+
+    /**
+     * Converts each file of the tsc arguments to JavaScript on its own,
+     * without reading the files it imports or references and without type
+     * checking. Only syntax and option errors are reported.
+     *
+     * @throws TscInvocationException if tsc exits with a non zero status or fails
+     */
+    void transpile(List<String> args, String encoding) throws TscInvocationException;
+
+    /**
+     * Makes the following compiles fail with a {@link TscCancelledException}
+     * once the token is cancelled: before they start, or as soon as possible
+     * while they run if the engine can be interrupted.
+     *
+     * @param token the token of the compiles, or null to run them to the end
+     */
+    void setCancelToken(CancelToken token);
+
+    /**
+     * Resolves the relative paths of the following compiles against a
+     * directory, or against the working directory of the JVM if null.
+     */
+    void setWorkingDirectory(File directory);
+
+    /**
+     * Sends the messages of the following compiles to a stream instead of the
+     * console, or back to the console if null.
+     */
+    void setOutput(PrintStream output);
+
+    /**
+     * Sends the diagnostics of the following compiles to a collector, which
+     * may also stop them at its error limit, or prints them if null.
+     */
+    void setDiagnostics(DiagnosticCollector diagnostics);
+
+    /**
+     * Adds the phase times and file I/O of the following compiles to the
+     * metrics, or stops recording them if null.
+     */
+    void setMetrics(CompileMetrics metrics);
+
+    /**
+     * Writes the outputs of the following compiles on the threads of a
+     * writer, waiting for them at the end of each compile, or writes them
+     * directly if null.
+     */
+    void setOutputWriter(OutputWriter writer);
+
+    /**
+     * @return the time spent loading and bootstrapping the compiler
+     */
+    CompileMetrics getStartupMetrics();
+
+    /**
+     * Keeps the file metadata below a directory cached between compiles.
+     * Every later change below it must be reported with {@link #invalidate}.
+     * Null stops keeping any.
+     */
+    void retainMetadata(File directory);
+
+    /**
+     * Forgets the cached metadata of created, modified or deleted files.
+     */
+    void invalidate(Collection<File> files);
+
+}
@@ -0,0 +1,56 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.IOException;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+/**
+ * Creates {@link TscSession}s for the engine named by the <code>engine</code>
+ * mojo parameter.
+ */
+public final class TscSessions {
+
+    public static final String AUTO = "auto";
+    public static final String RHINO = "rhino";
+    public static final String NASHORN = "nashorn";
+    public static final String GRAALJS = "graaljs";
+
+    private TscSessions() {
+    }
+
+    /**
+     * @param engine one of "rhino", "nashorn", "graaljs" or "auto", which picks
+     *        GraalJS, then Nashorn, then Rhino, whichever is first available
+     * @param scripts how Rhino loads the bundled scripts
+     */
+    public static TscSession create(String engine, ScriptClassCache scripts) throws IOException, TscInvocationException {
+        String name = engine == null ? RHINO : engine.toLowerCase();
+        if (AUTO.equals(name)) {
+            if (scriptEngine(GRAALJS) != null) {
+                name = GRAALJS;
+            } else if (scriptEngine(NASHORN) != null) {
+                name = NASHORN;
+            } else {
+                name = RHINO;
+            }
+        }
+
+        if (RHINO.equals(name)) {
+            return new RhinoTscSession(scripts);
+        } else if (NASHORN.equals(name) || GRAALJS.equals(name)) {
+            ScriptEngine scriptEngine = scriptEngine(name);
+            if (scriptEngine == null) {
+                throw new TscInvocationException("JavaScript engine '" + engine + "' is not available on this JVM");
+            }
+            return new ScriptEngineTscSession(scriptEngine, GRAALJS.equals(name) ? "GraalJS" : "Nashorn");
+        } else {
+            throw new TscInvocationException("Unknown JavaScript engine '" + engine
+                    + "', expected one of " + RHINO + ", " + NASHORN + ", " + GRAALJS + " or " + AUTO);
+        }
+    }
+
+    private static ScriptEngine scriptEngine(String name) {
+        ScriptEngineManager manager = new ScriptEngineManager(TscSessions.class.getClassLoader());
+        return manager.getEngineByName(GRAALJS.equals(name) ? "graal.js" : "nashorn");
+    }
+}
@@ -0,0 +1,197 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent compiles in parallel, each on its own warm
+ * {@link TscSession}, so each thread has its own engine and scope.
+ * <p>
+ * Each compile takes a session from {@link SharedTscSessions} on its worker
+ * thread, so missing sessions bootstrap in parallel too, and gives it back
+ * for the following compiles and modules. The messages and diagnostics
+ * of each compile are buffered and reported in the order of the compiles once
+ * all of them are done, so the report does not depend on scheduling.
+ * <p>
+ * A cancelled {@link CancelToken} stops the running compiles like a single
+ * session's, and the queued ones fail without starting.
+ */
+public class TscWorkerPool {
+
+    private final String engine;
+    private final ScriptClassCache scripts;
+    private final int threads;
+    private final CompileMetrics metrics;
+    private final File workingDirectory;
+    private final PrintStream output;
+    private final OutputWriter outputWriter;
+    private volatile CancelToken cancelToken;
+
+    /**
+     * @param metrics records the compiles and startups of the workers; may be null
+     * @param workingDirectory resolves the relative paths of the compiles, or
+     *        null for the working directory of the JVM
+     * @param output receives the messages of the compiles, or null for the
+     *        console
+     * @param outputWriter writes the files the compiles emit, or null to
+     *        write them on the worker threads
+     */
+    public TscWorkerPool(String engine, ScriptClassCache scripts, int threads, CompileMetrics metrics,
+            File workingDirectory, PrintStream output, OutputWriter outputWriter) {
+        this.engine = engine;
+        this.scripts = scripts;
+        this.threads = threads;
+        this.metrics = metrics;
+        this.workingDirectory = workingDirectory;
+        this.output = output != null ? output : System.out;
+        this.outputWriter = outputWriter;
+    }
+
+    /**
+     * @param token cancels the following compiles, or null to run them to
+     *        the end
+     */
+    public void setCancelToken(CancelToken token) {
+        cancelToken = token;
+    }
+
+    /**
+     * Runs one compile per argument list.
+     *
+     * @param diagnostics receives the diagnostics of all compiles, each
+     *        compile stopping at its error limit
+     * @throws TscInvocationException with the failure of the first compile
+     *         that failed, after all compiles completed
+     */
+    public void compile(List<List<String>> compiles, String encoding, DiagnosticCollector diagnostics)
+            throws TscInvocationException {
+        runAll(compiles, encoding, diagnostics, false);
+    }
+
+    /**
+     * Runs one {@link TscSession#transpile} per argument list.
+     *
+     * @param diagnostics receives the diagnostics of all transpiles
+     * @throws TscInvocationException with the failure of the first transpile
+     *         that failed, after all of them completed
+     */
+    public void transpile(List<List<String>> transpiles, String encoding, DiagnosticCollector diagnostics)
+            throws TscInvocationException {
+        runAll(transpiles, encoding, diagnostics, true);
+    }
+
+    private void runAll(List<List<String>> compiles, final String encoding, final DiagnosticCollector diagnostics,
+            final boolean transpile) throws TscInvocationException {
+        final CancelToken token = cancelToken;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, compiles.size()));
+        try {
+            List<Future<CompileOutput>> results = new ArrayList<Future<CompileOutput>>();
+            for (final List<String> args : compiles) {
+                results.add(executor.submit(new Callable<CompileOutput>() {
+                    public CompileOutput call() throws Exception {
+                        return run(args, encoding,
+                                new DiagnosticCollector(diagnostics.getLimit(), diagnostics.getMaxErrors()), transpile, token);
+                    }
+                }));
+            }
+            TscInvocationException failure = null;
+            for (Future<CompileOutput> result : results) {
+                try {
+                    result.get().report(output, diagnostics);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof CompileFailure) {
+                        ((CompileFailure) cause).output.report(output, diagnostics);
+                        cause = cause.getCause();
+                    }
+                    if (failure == null) {
+                        failure = cause instanceof TscInvocationException
+                                ? (TscInvocationException) cause
+                                : new TscInvocationException("Compile failed: " + cause, cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TscInvocationException("Interrupted while compiling", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompileOutput run(List<String> args, String encoding, DiagnosticCollector diagnostics, boolean transpile,
+            CancelToken token) throws Exception {
+        CompileOutput output = new CompileOutput(diagnostics);
+        try {
+            CancelToken.check(token);
+        } catch (TscCancelledException e) {
+            throw new CompileFailure(output, e);
+        }
+        TscSession session = SharedTscSessions.acquire(engine, scripts, metrics);
+        session.setWorkingDirectory(workingDirectory);
+        session.setOutput(new PrintStream(output.buffer, true, "UTF-8"));
+        session.setDiagnostics(diagnostics);
+        session.setOutputWriter(outputWriter);
+        session.setCancelToken(token);
+        try {
+            if (transpile) {
+                session.transpile(args, encoding);
+            } else {
+                session.compile(args, encoding);
+            }
+            return output;
+        } catch (TscInvocationException e) {
+            throw new CompileFailure(output, e);
+        } finally {
+            SharedTscSessions.release(session);
+        }
+    }
+
+    /**
+     * What a compile printed and reported.
+     */
+    private static class CompileOutput {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DiagnosticCollector diagnostics;
+
+        CompileOutput(DiagnosticCollector diagnostics) {
+            this.diagnostics = diagnostics;
+        }
+
+        void report(PrintStream out, DiagnosticCollector all) {
+            try {
+                out.print(buffer.toString("UTF-8"));
+                out.flush();
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            all.addAll(diagnostics);
+        }
+    }
+
+    /**
+     * A failed compile with the messages it printed.
+     */
+    private static class CompileFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final CompileOutput output;
+
+        CompileFailure(CompileOutput output, TscInvocationException cause) {
+            super(cause);
+            this.output = output;
+        }
+    }
+}
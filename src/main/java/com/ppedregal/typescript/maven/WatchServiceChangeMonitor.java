@@ -0,0 +1,255 @@
+package com.ppedregal.typescript.maven;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Watches a file set with native file system events. Every directory of the
+ * tree is registered, including the ones created later, and the monitor
+ * blocks until something changes, so an idle watch costs no CPU.
+ * <p>
+ * A directory filter keeps trees such as <code>node_modules</code> out of
+ * the watch. The directories it skipped are asked again after each change,
+ * so a filter following a configuration file picks up the directories the
+ * new configuration adds.
+ */
+public class WatchServiceChangeMonitor implements ChangeMonitor
+{
+    /**
+     * How long the tree must stay quiet before changes are reported. Editors
+     * truncate a file before writing it, and compiling the empty file in
+     * between would both waste a compile and misclassify it.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Path baseDir;
+
+    private final String includePattern;
+
+    private final WatchService watchService;
+
+    private final FileFilter directoryFilter;
+
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    private final Set<Path> skippedDirectories = new HashSet<Path>();
+
+    private final Set<String> knownFiles = new TreeSet<String>();
+
+    /**
+     * Creates a monitor on native events when the platform has them, and a
+     * {@link FileSetChangeMonitor} polling every <code>pollTime</code> millis
+     * otherwise.
+     */
+    public static ChangeMonitor create(File baseDir, String includePattern, long pollTime) {
+        return create(baseDir, includePattern, null, pollTime);
+    }
+
+    /**
+     * @param directoryFilter accepts the directories below the base directory
+     *        to watch, or null to watch all; the polling monitor scans all
+     */
+    public static ChangeMonitor create(File baseDir, String includePattern, FileFilter directoryFilter, long pollTime) {
+        WatchService watchService = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // The JDK emulates events by polling on some platforms, and our own
+            // poller can at least be tuned with pollTime.
+            if (!watchService.getClass().getName().contains("Polling")) {
+                return new WatchServiceChangeMonitor(baseDir, includePattern, directoryFilter, watchService);
+            }
+        } catch (IOException e) {
+            // fall through to polling
+        } catch (UnsupportedOperationException e) {
+            // fall through to polling
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return new FileSetChangeMonitor(baseDir, includePattern, pollTime);
+    }
+
+    WatchServiceChangeMonitor(File baseDir, String includePattern, FileFilter directoryFilter,
+            WatchService watchService) throws IOException {
+        this.baseDir = baseDir.toPath().toAbsolutePath();
+        this.includePattern = includePattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        this.directoryFilter = directoryFilter;
+        this.watchService = watchService;
+        register(this.baseDir, null);
+    }
+
+    public List<String> waitForModifiedFiles() throws InterruptedException {
+        Set<String> modified = new LinkedHashSet<String>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            handle(key, modified);
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (!modified.isEmpty()) {
+            registerAccepted();
+        }
+        return new ArrayList<String>(modified);
+    }
+
+    /**
+     * Registers the skipped directories the filter accepts now. Their files
+     * are not reported, the change that made the filter accept them is.
+     */
+    private void registerAccepted() {
+        for (Path dir : new ArrayList<Path>(skippedDirectories)) {
+            if (!Files.isDirectory(dir)) {
+                skippedDirectories.remove(dir);
+            } else if (directoryFilter.accept(dir.toFile())) {
+                skippedDirectories.remove(dir);
+                try {
+                    register(dir, null);
+                } catch (IOException e) {
+                    // gone meanwhile
+                }
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void handle(WatchKey key, Set<String> modified) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                rescan(modified);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    register(child, modified);
+                } catch (IOException e) {
+                    rescan(modified);
+                }
+            } else if (event.kind() == ENTRY_DELETE) {
+                deleted(child, modified);
+            } else {
+                changed(child, modified);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Registers a directory tree, reporting the files found in it when it
+     * appeared after the monitor started.
+     */
+    private void register(Path start, final Set<String> modified) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (directoryFilter != null && !dir.equals(baseDir) && !directoryFilter.accept(dir.toFile())) {
+                    skippedDirectories.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String path = relativePath(file);
+                if (matches(path) && knownFiles.add(path) && modified != null) {
+                    modified.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Reports every matching file, and the known ones that disappeared, after
+     * events were lost.
+     */
+    private void rescan(Set<String> modified) {
+        Set<String> before = new TreeSet<String>(knownFiles);
+        knownFiles.clear();
+        try {
+            register(baseDir, modified);
+        } catch (IOException e) {
+            // report what we know
+        }
+        modified.addAll(knownFiles);
+        before.removeAll(knownFiles);
+        modified.addAll(before);
+    }
+
+    private void changed(Path file, Set<String> modified) {
+        String path = relativePath(file);
+        if (matches(path) && Files.isRegularFile(file)) {
+            knownFiles.add(path);
+            modified.add(path);
+        }
+    }
+
+    /**
+     * A deleted entry may be a file or a whole directory, whose known files
+     * are all reported.
+     */
+    private void deleted(Path entry, Set<String> modified) {
+        String path = relativePath(entry);
+        String prefix = path + File.separator;
+        for (Iterator<String> it = knownFiles.iterator(); it.hasNext();) {
+            String known = it.next();
+            if (known.equals(path) || known.startsWith(prefix)) {
+                modified.add(known);
+                it.remove();
+            }
+        }
+    }
+
+    private String relativePath(Path file) {
+        return baseDir.relativize(file).toString();
+    }
+
+    private boolean matches(String path) {
+        return SelectorUtils.matchPath(includePattern, path);
+    }
+}
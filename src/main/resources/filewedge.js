@@ -7,14 +7,7 @@ var ___fs = require('fs');
   
   function wedgeExistsSync(filename) {
     if (filename.indexOf(resourcePrefix) === 0) {
-      var filepart = filename.substr(resourcePrefix.length);
-      var stream = java.lang.Class.forName("com.ppedregal.typescript.maven.TscMojo").getClassLoader().getResourceAsStream(filepart);
-      if (stream === null) {
-        return false;
-      } else {
-        stream.close();
-        return true;
-      }
+      return Boolean(__host.resourceExists(filename.substr(resourcePrefix.length)));
     } else {
       return fs_existsSync(filename);
     }    
@@ -26,31 +19,17 @@ var ___fs = require('fs');
     enc = enc || process.encoding || "utf-8";
 
     if (filename.indexOf(resourcePrefix) === 0) {
-      var filepart = filename.substr(resourcePrefix.length);
-      var stream = java.lang.Class.forName("com.ppedregal.typescript.maven.TscMojo").getClassLoader().getResourceAsStream(filepart);
-      if (stream === null) {
+      var content = __host.readResource(filename.substr(resourcePrefix.length), enc);
+      if (content === null) {
         return null;
       }
-      
-      var inputstreamreader = new java.io.InputStreamReader(stream, enc);
-      var reader = new java.io.BufferedReader(inputstreamreader);
-      try {
-          var buffer = new java.lang.StringBuffer();
-          var line;
-          while ((line=reader.readLine()) !== null){
-              buffer.append(line);
-              buffer.append("\r\n");
-          }
-      } finally {
-          reader.close();
-      }
-      reader = null;
+      content = String(content);
       return {
           "0":0,
           "1":0,
-          length: buffer.length(),
+          length: content.length,
           toString:function(){
-              return new String(buffer.toString());
+              return content;
           }
       };
       
@@ -1,22 +1,18 @@
 function log(m,s){
 	console.debug("fs."+m+": "+s);
 }
-function javafile(path){
-	var p = String(path).replace(/[\/\\]/g,String(java.io.File.separator));
-	return new java.io.File(p);
-}
 function argv(args){
 	return Array.prototype.slice.call(args).join(",");
 }
 var Stats = (function(){
 	function Stats(path){
-		this.javafile=javafile(path);
+		this.path=String(path);
 	}
 	Stats.prototype.isFile=function(){
-		return Boolean(this.javafile.isFile());
+		return Boolean(__host.isFile(this.path));
 	};
 	Stats.prototype.isDirectory=function(){
-		return Boolean(this.javafile.isDirectory());
+		return Boolean(__host.isDirectory(this.path));
 	};
 	Stats.prototype.isBlockDevice=function(){
 		return false;		
@@ -39,50 +35,34 @@ var Stats = (function(){
 exports.readFileSync=function(path,enc){
         var hasEncoding = enc !== undefined;
 	enc=enc||process.encoding||"utf-8";
-	var f = javafile(path);
-	var reader = new java.io.BufferedReader(new java.io.InputStreamReader(new java.io.FileInputStream(f),enc));
+	var content;
 	try {
-		var buffer = new java.lang.StringBuffer(),
-			line;
-		while ((line=reader.readLine())!=null){
-			buffer.append(line);
-			buffer.append("\r\n");
-		}
+		content = String(__host.readFile(String(path),enc));
 	} catch (e){
 		return null;
-	} finally {
-		reader.close();
 	}
-	reader = null;
         
-        return hasEncoding ? new String(buffer.toString()) : {
+        return hasEncoding ? content : {
           "0":0,
           "1":0,
-          length: buffer.length(),
+          length: content.length,
           toString:function(){
-                  return new String(buffer.toString());
+                  return content;
           }
           };
 };
 exports.writeFileSync=function(path,data,enc){
 //	log("writeFileSync",argv(arguments));
 	enc=enc||process.encoding||"utf-8";
-	var f = javafile(path),
-		writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(new java.io.FileOutputStream(f),enc));
-	try {
-		writer.write(data,0,data.length);
-	} catch (e){		
-	} finally {
-		writer.close();
-	}
-	writer=null;
+	// failures reach tsc, which reports them as diagnostics
+	__host.writeFile(String(path),String(data),enc);
 };
 exports.unlinkSync=function(path){
-	return javafile(path)["delete"]();
+	return Boolean(__host["delete"](String(path)));
 };
 exports.existsSync=function(path){
 //  log("existsSync",argv(arguments));
-	return javafile(path).exists();
+	return Boolean(__host.exists(String(path)));
 };
 exports.statSync=function(path){
 	return new Stats(path);
@@ -94,30 +74,28 @@ exports.fstatSync=function(path){
 	return new Stats(path);
 };
 exports.mkdirSync=function(path){
-	return javafile(path).mkdir();
+	return Boolean(__host.mkdir(String(path)));
 };
 exports.openSync=function(path,flags,mode){
 //  log("openSync",argv(arguments));
-	var enc = process.encoding||"utf-8",
-		f = javafile(path),
-		writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(new java.io.FileOutputStream(f),enc));
-	return writer;
+	return __host.open(String(path),process.encoding||"utf-8");
 };
 exports.writeSync=function(fd,buffer,offset,len,pos){
 //  log("writeSync",argv(arguments));
   if (fd === 1) {
     process.stdout.write(buffer);
   } else { 
-    fd.write(new String(buffer.data, buffer.encoding));
+    fd.write(String(buffer.data));
   }
 };
 exports.closeSync=function(fd){
 	fd.close();
 };
 exports.readdirSync=function(path){
-	var arr = javafile(path).list();
-	for (var i=0,li=arr.length;i<li;i++){
-		arr[i]=new String(arr[i]);
+	var list = __host.list(String(path)),
+		arr = [];
+	for (var i=0,li=list.length;i<li;i++){
+		arr.push(String(list[i]));
 	}
 	return arr;
 };
@@ -127,6 +105,6 @@ exports.unwatchFile=function(){
 exports.watchFile=function(){
 	log("watchFile",argv(arguments));
 };
-exports.realpathSync=function(){
-	return new String(javafile(path).getCanonicalPath()).replace(/[\/\\]/g,java.io.File.separator);
-};
\ No newline at end of file
+exports.realpathSync=function(path){
+	return String(__host.canonicalPath(String(path)));
+};
@@ -1,33 +1,33 @@
 var process = {};
 (function(){
-	function print(writer,o){
-		writer.print(o||"");
+	function print(error,o){
+		__host.print(error,String(o||""));
 	}
-	function println(writer,o){
-		writer.println(o||"");
+	function println(error,o){
+		print(error,(o||"")+"\n");
 	}
 	function platform(){
-		var prop = java.lang.System.getProperty;
+		var prop = function(name){ return String(__host.getProperty(name)); };
 		return prop("os.name") + " - " + prop("os.version")+ " ("+prop("os.version")+")";
 	}
 	function exit(status){
 		status = status || 0;
-		throw new com.ppedregal.typescript.maven.ProcessExit(status);
+		throw __host.exit(status);
 	}
 	function cwd() {
-		return new String(java.lang.System.getProperty("user.dir"));
+		return String(__host.cwd());
 	}
 	process = {
 		stdout: {
       write:function(o){
         if (o instanceof Buffer) {
-          print(java.lang.System.out, o.data);
+          print(false, o.data);
         } else {
-          print(java.lang.System.out, o);
+          print(false, o);
         }
       },
 			writeln:function(o){
-				println(java.lang.System.out,o);
+				println(false,o);
 			},
 			on: function(event, callback) {
 				// Graciously ignoring event
@@ -35,10 +35,10 @@ var process = {};
 		},
 		stderr: {
 			write:function(o){
-				print(java.lang.System.err,o);
+				print(true,o);
 			},
 			writeln:function(o){
-				println(java.lang.System.err,o);
+				println(true,o);
 			},
 			on: function(event, callback) {
 				// Graciously ignoring event
@@ -47,10 +47,12 @@ var process = {};
 		browser: false,
 		nextTick: function() { },	// extra stuff to trick tsc into thinking this is Node.
 		platform: platform(),
-		argv:[],
+		// tsc.js is run once with --version when it is loaded, which only
+		// defines the ts namespace; __tscCompile sets the real arguments.
+		argv:["node","tsc.js","--version"],
 		exit: exit,
 		mainModule: {
-			filename:""
+			filename:"___classloader_resource___/tsc.js"
 		},
         cwd: cwd
 	};
@@ -96,33 +98,18 @@ var setTimeout,
     clearInterval;
 
 (function () {
-    var timer = new java.util.Timer();
+    /* Timers are only used by tsc's own --watch support. The plugin watches
+       the sources itself, so they are accepted and never fire. */
     var counter = 1;
-    var ids = {};
 
     setTimeout = function (fn,delay) {
-        /* this should work with a newer version of Rhino, but for now it's commented out
-           cfr. https://github.com/mozilla/rhino/commit/69b177c7214e0d1ac9656dec33e13aedfe6938a0
-
-           var id = counter++;
-           ids[id] = new JavaAdapter(java.util.TimerTask,{run: fn});
-           timer.schedule(ids[id],delay);
-           return id;
-        */
+        return counter++;
     };
 
     clearTimeout = function (id) {
-        ids[id].cancel();
-        timer.purge();
-        delete ids[id];
     };
 
-    setInterval = function (fn,delay) {
-        var id = counter++;
-        ids[id] = new JavaAdapter(java.util.TimerTask,{run: fn});
-        timer.schedule(ids[id],delay,delay);
-        return id;
-    };
+    setInterval = setTimeout;
 
     clearInterval = clearTimeout;
 
@@ -131,4 +118,20 @@ var setTimeout,
 function Buffer(data, encoding) {
     this.data = data;
     this.encoding = encoding;
-}
\ No newline at end of file
+}
+
+var __filename = process.mainModule.filename;
+
+/* Called by the Java sessions once tsc.js has been loaded. */
+function __tscCompile() {
+    var javaArgs = __host.getArgs(),
+        args = [];
+    for (var i = 0; i < javaArgs.length; i++) {
+        args.push(String(javaArgs[i]));
+    }
+    process.encoding = String(__host.getEncoding());
+    process.argv = ["node", "tsc.js"].concat(args);
+    __tscTimed(function () {
+        ts.executeCommandLine(args);
+    });
+}
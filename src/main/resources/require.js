@@ -0,0 +1,17 @@
+/* A minimal CommonJS require() over the bundled modules/*.js, for the
+   engines that do not provide Rhino's RequireBuilder. */
+var require = (function () {
+    var cache = {};
+    return function require(id) {
+        if (!cache.hasOwnProperty(id)) {
+            var source = __host.readResource("modules/" + id + ".js", "utf-8");
+            if (source === null) {
+                throw new Error("Cannot find module '" + id + "'");
+            }
+            var module = { id: id, exports: {} };
+            cache[id] = module;
+            new Function("exports", "module", "require", String(source))(module.exports, module, require);
+        }
+        return cache[id].exports;
+    };
+})();
@@ -0,0 +1,232 @@
+/* Loaded once tsc.js has defined the ts namespace. Keeps parsed SourceFiles
+   for as long as the session lives, so they are only parsed again when they
+   change:
+   - the default library files (lib.d.ts, lib.es6.d.ts) are kept as they are,
+     for the whole session;
+   - other files are kept along with the host's stamp, their modification
+     time and length, and re-read when it differs. The host adds a content
+     hash to the stamp of files modified within the timestamp resolution of
+     the file system, which the time and length alone may miss;
+   - other files no program used in the previous compile, such as the
+     sources of another module that shared this session, are dropped;
+   - all files the current compile used are dropped when it is cancelled,
+     see __discardCancelledSources.
+   The binder skips files that already have their locals, and the checker
+   clones symbols before merging declarations into them, so the same
+   SourceFile can safely be part of many programs. */
+var __discardCancelledSources;
+
+(function () {
+    var resourcePrefix = "___classloader_resource___/";
+    var sourceFiles = {};
+    var generation = 0;
+
+    var createCompilerHost = ts.createCompilerHost;
+    ts.createCompilerHost = function (options, setParentNodes) {
+        generation++;
+        for (var name in sourceFiles) {
+            if (sourceFiles.hasOwnProperty(name) && name.indexOf(resourcePrefix) !== 0
+                    && sourceFiles[name].generation < generation - 1) {
+                delete sourceFiles[name];
+            }
+        }
+        var host = createCompilerHost(options, setParentNodes);
+        var getSourceFile = host.getSourceFile;
+        host.getSourceFile = function (fileName, languageVersion, onError) {
+            var key = fileName + "|" + languageVersion + "|" + !!setParentNodes;
+            var stamp = fileName.indexOf(resourcePrefix) === 0 ? "" : String(__host.stamp(fileName));
+            var cached = sourceFiles.hasOwnProperty(key) ? sourceFiles[key] : undefined;
+            if (cached && cached.stamp === stamp) {
+                cached.generation = generation;
+                return cached.sourceFile;
+            }
+            var sourceFile = getSourceFile(fileName, languageVersion, onError);
+            if (sourceFile) {
+                sourceFiles[key] = { sourceFile: sourceFile, stamp: stamp, generation: generation };
+            } else {
+                delete sourceFiles[key];
+            }
+            return sourceFile;
+        };
+        return host;
+    };
+
+    /* Called by the Java session when a compile was cancelled. The cancel
+       may have stopped the binder half way through a file, and tsc only
+       binds files without locals, so none of them may be reused. */
+    __discardCancelledSources = function () {
+        for (var name in sourceFiles) {
+            if (sourceFiles.hasOwnProperty(name) && sourceFiles[name].generation === generation) {
+                delete sourceFiles[name];
+            }
+        }
+    };
+})();
+
+/* Hands each diagnostic tsc reports to the host as it is, instead of
+   formatting it into the output. tsc's reportDiagnostic defers to this. */
+ts.sys.reportDiagnostic = function (diagnostic) {
+    var fileName = null,
+        line = 0,
+        column = 0;
+    if (diagnostic.file) {
+        var loc = ts.getLineAndCharacterOfPosition(diagnostic.file, diagnostic.start);
+        fileName = diagnostic.file.fileName;
+        line = loc.line + 1;
+        column = loc.character + 1;
+    }
+    var message = typeof diagnostic.messageText === "string"
+        ? diagnostic.messageText
+        : ts.flattenDiagnosticMessageText(diagnostic.messageText, "\n");
+    __host.report(fileName, line, column, ts.DiagnosticCategory[diagnostic.category].toLowerCase(),
+        diagnostic.code, message);
+};
+
+/* Fails fast once the host's error limit is reached: the semantic
+   diagnostics of the whole program are gathered file by file, the files
+   after the limit are not checked, and nothing is emitted. */
+(function () {
+    var createProgram = ts.createProgram;
+    ts.createProgram = function (rootNames, options, host, oldProgram) {
+        var program = createProgram(rootNames, options, host, oldProgram);
+        var getSemanticDiagnostics = program.getSemanticDiagnostics;
+        var emit = program.emit;
+        var stopped = false;
+        program.getSemanticDiagnostics = function (sourceFile, cancellationToken) {
+            var maxErrors = __host.getMaxErrors();
+            if (sourceFile || maxErrors <= 0) {
+                return getSemanticDiagnostics(sourceFile, cancellationToken);
+            }
+            var files = program.getSourceFiles(),
+                diagnostics = [],
+                errors = 0;
+            for (var i = 0; i < files.length; i++) {
+                if (errors >= maxErrors) {
+                    stopped = true;
+                    __host.stoppedAtErrorLimit();
+                    break;
+                }
+                var fileDiagnostics = getSemanticDiagnostics(files[i], cancellationToken);
+                for (var j = 0; j < fileDiagnostics.length; j++) {
+                    if (fileDiagnostics[j].category === ts.DiagnosticCategory.Error) {
+                        errors++;
+                    }
+                }
+                diagnostics = diagnostics.concat(fileDiagnostics);
+            }
+            return ts.sortAndDeduplicateDiagnostics(diagnostics);
+        };
+        program.emit = function () {
+            if (stopped) {
+                return { emitSkipped: true, diagnostics: [] };
+            }
+            return emit.apply(program, arguments);
+        };
+        return program;
+    };
+})();
+
+/* Runs a compile with tsc's phase timers reset, and hands them to the host
+   afterwards even when the compile ends with process.exit(). tsc itself only
+   resets them in executeCommandLine, and never resets parseTime. */
+function __tscTimed(compile) {
+    ts.ioReadTime = ts.ioWriteTime = ts.programTime = ts.parseTime = 0;
+    ts.bindTime = ts.checkTime = ts.emitTime = 0;
+    try {
+        return compile();
+    } finally {
+        __host.recordPhases(ts.programTime, ts.parseTime, ts.bindTime, ts.checkTime, ts.emitTime,
+            ts.ioReadTime, ts.ioWriteTime);
+    }
+}
+
+/* Called by the Java sessions for watch mode rebuilds. The whole program is
+   built from the arguments, reusing the unchanged SourceFiles kept above,
+   but only the affected files are checked and emitted. */
+function __tscCompileAffected() {
+    return __tscTimed(__compileAffected);
+}
+
+function __compileAffected() {
+    var args = [],
+        affected = [],
+        i;
+    var javaArgs = __host.getArgs();
+    for (i = 0; i < javaArgs.length; i++) {
+        args.push(String(javaArgs[i]));
+    }
+    var javaAffected = __host.getAffectedFiles();
+    for (i = 0; i < javaAffected.length; i++) {
+        affected.push(String(javaAffected[i]));
+    }
+    process.encoding = String(__host.getEncoding());
+    process.argv = ["node", "tsc.js"].concat(args);
+
+    var commandLine = ts.parseCommandLine(args);
+    if (commandLine.errors.length > 0) {
+        reportDiagnostics(commandLine.errors);
+        return ts.sys.exit(ts.ExitStatus.DiagnosticsPresent_OutputsSkipped);
+    }
+    var options = commandLine.options;
+    var program = ts.createProgram(commandLine.fileNames, options, ts.createCompilerHost(options));
+
+    var sourceFiles = [];
+    for (i = 0; i < affected.length; i++) {
+        var sourceFile = program.getSourceFile(ts.normalizePath(affected[i]));
+        if (sourceFile) {
+            sourceFiles.push(sourceFile);
+        }
+    }
+
+    var diagnostics = [];
+    for (i = 0; i < sourceFiles.length; i++) {
+        diagnostics = diagnostics.concat(program.getSyntacticDiagnostics(sourceFiles[i]));
+    }
+    var stopped = false;
+    if (diagnostics.length === 0) {
+        diagnostics = program.getOptionsDiagnostics().concat(program.getGlobalDiagnostics());
+        if (diagnostics.length === 0) {
+            var maxErrors = __host.getMaxErrors(),
+                errors = 0;
+            for (i = 0; i < sourceFiles.length && !stopped; i++) {
+                var fileDiagnostics = program.getSemanticDiagnostics(sourceFiles[i]);
+                for (var j = 0; j < fileDiagnostics.length; j++) {
+                    if (fileDiagnostics[j].category === ts.DiagnosticCategory.Error) {
+                        errors++;
+                    }
+                }
+                diagnostics = diagnostics.concat(fileDiagnostics);
+                stopped = maxErrors > 0 && errors >= maxErrors && i < sourceFiles.length - 1;
+            }
+            if (stopped) {
+                __host.stoppedAtErrorLimit();
+            }
+        }
+    }
+    reportDiagnostics(diagnostics);
+
+    var emitSkipped = stopped,
+        emitDiagnostics = [];
+    if (!options.noEmit && !stopped) {
+        for (i = 0; i < sourceFiles.length; i++) {
+            var output = program.emit(sourceFiles[i]);
+            emitSkipped = emitSkipped || output.emitSkipped;
+            emitDiagnostics = emitDiagnostics.concat(output.diagnostics);
+        }
+        reportDiagnostics(emitDiagnostics);
+    }
+
+    if (emitSkipped || (options.noEmit && diagnostics.length > 0)) {
+        return ts.sys.exit(ts.ExitStatus.DiagnosticsPresent_OutputsSkipped);
+    }
+    if (diagnostics.length > 0 || emitDiagnostics.length > 0) {
+        return ts.sys.exit(ts.ExitStatus.DiagnosticsPresent_OutputsGenerated);
+    }
+    return ts.sys.exit(ts.ExitStatus.Success);
+
+    function reportDiagnostics(list) {
+        for (var k = 0; k < list.length; k++) {
+            ts.sys.reportDiagnostic(list[k]);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/* Loaded after sourcecache.js. Transpiles source files one by one like
+   ts.transpileModule of the language services, which tsc.js does not
+   include: each file is a program of its own, without the default library
+   or the files it imports and references, so nothing is type checked and
+   only syntax and option errors are reported. The outputs are written where
+   a full compile with the same --outDir and --rootDir would write them. */
+function __tscTranspile() {
+    var args = [],
+        i;
+    var javaArgs = __host.getArgs();
+    for (i = 0; i < javaArgs.length; i++) {
+        args.push(String(javaArgs[i]));
+    }
+    process.encoding = String(__host.getEncoding());
+    process.argv = ["node", "tsc.js"].concat(args);
+
+    return __tscTimed(function () {
+        var commandLine = ts.parseCommandLine(args);
+        if (commandLine.errors.length > 0) {
+            report(commandLine.errors);
+            return ts.sys.exit(ts.ExitStatus.DiagnosticsPresent_OutputsSkipped);
+        }
+        var options = commandLine.options;
+        // Without module resolution, imports are only kept by isolatedModules,
+        // which needs a module format; global scripts have no imports anyway.
+        options.isolatedModules = !!(options.module || options.target >= ts.ScriptTarget.ES6);
+        options.noLib = true;
+        options.noResolve = true;
+        options.declaration = false;
+        options.noEmitOnError = false;
+
+        var host = ts.createCompilerHost(options),
+            reported = 0;
+        for (i = 0; i < commandLine.fileNames.length; i++) {
+            var program = ts.createProgram([commandLine.fileNames[i]], options, host);
+            var diagnostics = program.getSyntacticDiagnostics().concat(program.getOptionsDiagnostics());
+            report(diagnostics);
+            reported += diagnostics.length;
+            program.emit();
+        }
+        return ts.sys.exit(reported > 0 ? ts.ExitStatus.DiagnosticsPresent_OutputsGenerated : ts.ExitStatus.Success);
+    });
+
+    function report(list) {
+        for (var j = 0; j < list.length; j++) {
+            ts.sys.reportDiagnostic(list[j]);
+        }
+    }
+}
@@ -31216,6 +31216,10 @@ var ts;
         return diagnostic.messageText;
     }
     function reportDiagnostic(diagnostic) {
+        // typescript-maven-plugin: the host receives structured diagnostics, see sourcecache.js
+        if (ts.sys.reportDiagnostic) {
+            return ts.sys.reportDiagnostic(diagnostic);
+        }
         var output = "";
         if (diagnostic.file) {
             var loc = ts.getLineAndCharacterOfPosition(diagnostic.file, diagnostic.start);
@@ -0,0 +1,47 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class BuildCacheTest extends TestCase {
+
+    public void testStoreAndRestore() throws Exception {
+        File root = new File("target/build-cache-test");
+        FileUtils.deleteDirectory(root);
+        File base = new File(root, "module");
+        File js = new File(base, "target/ts/a.js");
+        FileUtils.writeStringToFile(js, "var a = 1;\n", "UTF-8");
+
+        BuildCache cache = new BuildCache(new File(root, "cache"), 1024 * 1024);
+        assertEquals(-1, cache.restore("k1", base));
+        assertTrue(cache.store("k1", base, Arrays.asList(js)));
+        assertFalse(cache.store("k2", base, Arrays.asList(new File(root, "elsewhere.js"))));
+
+        File copy = new File(root, "copy");
+        assertEquals(1, cache.restore("k1", copy));
+        assertEquals("var a = 1;\n", FileUtils.readFileToString(new File(copy, "target/ts/a.js"), "UTF-8"));
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        File root = new File("target/build-cache-evict-test");
+        FileUtils.deleteDirectory(root);
+        File js = new File(root, "a.js");
+        FileUtils.writeStringToFile(js, "var a = 1;\n", "UTF-8");
+        File dir = new File(root, "cache");
+
+        BuildCache cache = new BuildCache(dir, 1024 * 1024);
+        cache.store("old", root, Collections.singleton(js));
+        cache.store("new", root, Collections.singleton(js));
+        new File(dir, "old.zip").setLastModified(System.currentTimeMillis() - 60000);
+        long size = new File(dir, "new.zip").length();
+
+        new BuildCache(dir, size).evict();
+        assertFalse(new File(dir, "old.zip").exists());
+        assertTrue(new File(dir, "new.zip").exists());
+    }
+}
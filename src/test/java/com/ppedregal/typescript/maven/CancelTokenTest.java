@@ -0,0 +1,110 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.ScriptStackElement;
+
+import junit.framework.TestCase;
+
+public class CancelTokenTest extends TestCase {
+
+    private static final String SOURCE = "src/test/resources/testproject1/src/main/ts/simple_inheritance.ts";
+
+    private File target;
+
+    protected void setUp() throws Exception {
+        target = new File("target/cancel-token-test/" + getName());
+        FileUtils.deleteDirectory(target);
+    }
+
+    /**
+     * A cancel arriving before the compile started stops it, and the next
+     * token lets the session compile again.
+     */
+    public void testCancelBeforeCompile() throws Exception {
+        RhinoTscSession session = new RhinoTscSession();
+        List<String> args = Arrays.asList("--outDir", target.getPath(), SOURCE);
+        CancelToken token = new CancelToken();
+        token.cancel();
+        session.setCancelToken(token);
+        try {
+            session.compile(args, "utf-8");
+            fail("cancel lost");
+        } catch (TscCancelledException e) {
+            // expected
+        }
+        assertFalse(new File(target, "simple_inheritance.js").exists());
+
+        session.setCancelToken(new CancelToken());
+        session.compile(args, "utf-8");
+        assertTrue(new File(target, "simple_inheritance.js").exists());
+    }
+
+    /**
+     * A compile cancelled while binding leaves the session compiling like a
+     * new one, although tsc never binds a file again once it has locals.
+     */
+    public void testCompileAfterCancelInBinderMatchesColdCompile() throws Exception {
+        File sources = new File(target, "src");
+        FileUtils.copyFileToDirectory(new File(SOURCE), sources);
+        FileUtils.writeStringToFile(new File(sources, "error.ts"),
+                "class Zebra extends Animal {}\nvar zebra = new Zebra(\"z\");\nvar n: number = zebra.move;\n", "utf-8");
+        List<String> args = Arrays.asList("--declaration", "--outDir", new File(target, "out").getPath(),
+                new File(sources, "simple_inheritance.ts").getPath(), new File(sources, "error.ts").getPath());
+
+        String cold = compile(new RhinoTscSession(), args, null);
+        RhinoTscSession session = new RhinoTscSession();
+        final boolean[] cancelled = new boolean[1];
+        CancelToken inBinder = new CancelToken() {
+            public boolean isCancelled() {
+                for (ScriptStackElement frame : new EvaluatorException("").getScriptStack()) {
+                    if ("bindSourceFileWorker".equals(frame.functionName)) {
+                        cancelled[0] = true;
+                    }
+                }
+                return cancelled[0];
+            }
+        };
+        try {
+            compile(session, args, inBinder);
+            fail("not cancelled while binding");
+        } catch (TscCancelledException e) {
+            assertTrue(cancelled[0]);
+        }
+        assertEquals(cold, compile(session, args, null));
+    }
+
+    private static String compile(RhinoTscSession session, List<String> args, CancelToken token) throws Exception {
+        DiagnosticCollector diagnostics = new DiagnosticCollector(100);
+        session.setDiagnostics(diagnostics);
+        session.setCancelToken(token);
+        try {
+            session.compile(args, "utf-8");
+        } catch (TscCancelledException e) {
+            throw e;
+        } catch (TscInvocationException e) {
+            // the type error
+        }
+        return diagnostics.getDiagnostics().toString();
+    }
+
+    public void testCancelWorkerPool() throws Exception {
+        TscWorkerPool pool = new TscWorkerPool(null, new ScriptClassCache(null, -1), 2, null, null, null, null);
+        CancelToken token = new CancelToken();
+        token.cancel();
+        pool.setCancelToken(token);
+        List<String> args = Arrays.asList("--outDir", target.getPath(), SOURCE);
+        try {
+            pool.compile(Collections.nCopies(2, args), "utf-8", new DiagnosticCollector(100));
+            fail("cancel lost");
+        } catch (TscCancelledException e) {
+            // expected
+        }
+        assertFalse(new File(target, "simple_inheritance.js").exists());
+    }
+}
@@ -0,0 +1,70 @@
+package com.ppedregal.typescript.maven;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class CompileSchedulerTest extends TestCase {
+
+    /**
+     * Reports the batches put in its queue.
+     */
+    private static class QueueMonitor implements ChangeMonitor {
+        final BlockingQueue<List<String>> batches = new LinkedBlockingQueue<List<String>>();
+
+        public List<String> waitForModifiedFiles() throws InterruptedException {
+            return batches.take();
+        }
+
+        public void close() {
+        }
+    }
+
+    public void testCoalescesBurst() throws Exception {
+        QueueMonitor monitor = new QueueMonitor();
+        CompileScheduler scheduler = new CompileScheduler(monitor, 100, null, null);
+        scheduler.start();
+        try {
+            monitor.batches.put(Arrays.asList("a.ts"));
+            monitor.batches.put(Arrays.asList("b.ts", "a.ts"));
+            assertEquals(Arrays.asList("a.ts", "b.ts"), scheduler.nextChanges());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    public void testCancelsAndRequeues() throws Exception {
+        QueueMonitor monitor = new QueueMonitor();
+        final AtomicInteger cancels = new AtomicInteger();
+        CompileScheduler scheduler = new CompileScheduler(monitor, 50, new CompileScheduler.Filter() {
+            public boolean accept(String path) {
+                return path.endsWith(".ts");
+            }
+        }, new Runnable() {
+            public void run() {
+                cancels.incrementAndGet();
+            }
+        });
+        scheduler.start();
+        try {
+            monitor.batches.put(Arrays.asList("a.ts"));
+            List<String> changes = scheduler.nextChanges();
+            scheduler.compiling();
+            monitor.batches.put(Collections.singletonList("a.js"));
+            monitor.batches.put(Collections.singletonList("b.ts"));
+            while (cancels.get() == 0) {
+                Thread.sleep(10);
+            }
+            assertTrue(scheduler.compiled(changes));
+            assertEquals(Arrays.asList("b.ts", "a.ts"), scheduler.nextChanges());
+            assertEquals(1, cancels.get());
+        } finally {
+            scheduler.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class DeclarationFingerprintTest extends TestCase {
+
+    public void testWriteAndFind() throws Exception {
+        File root = new File("target/fingerprint-test");
+        FileUtils.deleteDirectory(root);
+        File a = new File(root, "a.d.ts");
+        File b = new File(root, "lib/b.d.ts");
+        FileUtils.writeStringToFile(a, "export declare var a: number;\n", "UTF-8");
+        FileUtils.writeStringToFile(b, "export declare var b: string;\n", "UTF-8");
+
+        String fingerprint = DeclarationFingerprint.write(root, Arrays.asList(a, b));
+        File file = new File(root, DeclarationFingerprint.FILE_NAME);
+        assertEquals(fingerprint, DeclarationFingerprint.read(file));
+        assertEquals(file.getAbsoluteFile(), DeclarationFingerprint.find(b));
+        assertNull(DeclarationFingerprint.find(new File(root, "lib/c.d.ts")));
+
+        assertEquals(fingerprint, DeclarationFingerprint.write(root, Arrays.asList(b, a)));
+        FileUtils.writeStringToFile(b, "export declare var b: number;\n", "UTF-8");
+        assertFalse(fingerprint.equals(DeclarationFingerprint.write(root, Arrays.asList(a, b))));
+    }
+}
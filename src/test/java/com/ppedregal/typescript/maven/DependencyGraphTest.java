@@ -0,0 +1,113 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+public class DependencyGraphTest extends TestCase {
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File("target/dependency-graph-test");
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, content, "utf-8");
+        return file;
+    }
+
+    public void testDependentsOfImportedModule() throws Exception {
+        File a = write("a.ts", "export var a = 1;\n");
+        File b = write("sub/b.ts", "import { a } from \"../a\";\nexport var b = a;\n");
+        File c = write("c.ts", "import b = require(\"./sub/b\");\nexport var c = b.b;\n");
+        File d = write("d.ts", "export var d = 4;\n");
+
+        DependencyGraph graph = new DependencyGraph("utf-8");
+        for (File file : new File[] { a, b, c, d }) {
+            graph.update(file);
+        }
+
+        Set<File> affected = graph.dependentsOf(Collections.singleton(a));
+        assertEquals(3, affected.size());
+        assertTrue(affected.contains(c.getAbsoluteFile()));
+        assertFalse(affected.contains(d.getAbsoluteFile()));
+        assertFalse(graph.isGlobalScript(a));
+    }
+
+    public void testReferencesAndGlobalScripts() throws Exception {
+        File lib = write("lib.d.ts", "declare var lib: number;\n");
+        File main = write("main.ts", "/// <reference path=\"lib.d.ts\" />\nvar x = lib;\n");
+
+        DependencyGraph graph = new DependencyGraph("utf-8");
+        graph.update(lib);
+        graph.update(main);
+
+        assertTrue(graph.isGlobalScript(main));
+        assertTrue(graph.dependentsOf(Collections.singleton(lib)).contains(main.getAbsoluteFile()));
+
+        write("main.ts", "export var x = 1;\n");
+        graph.update(main);
+        assertEquals(1, graph.dependentsOf(Collections.singleton(lib)).size());
+    }
+
+    public void testNamespacesAreGlobalScripts() throws Exception {
+        File a = write("a.ts", "module App {\n    export class A {}\n}\n");
+        File b = write("b.ts", "namespace App {\n    export class B extends A {}\n}\n");
+        File c = write("c.ts", "// export var commented;\nvar s = \"\\nexport var quoted\";\nimport Alias = App.A;\n");
+        File m = write("m.ts", "declare module \"x\" {\n    export var x: number;\n}\nexport class M {}\n");
+
+        DependencyGraph graph = new DependencyGraph("utf-8");
+        for (File file : new File[] { a, b, c, m }) {
+            graph.update(file);
+        }
+        assertTrue(graph.isGlobalScript(a));
+        assertTrue(graph.isGlobalScript(b));
+        assertTrue(graph.isGlobalScript(c));
+        assertFalse(graph.isGlobalScript(m));
+
+        Set<File> affected = graph.dependentsOf(Collections.singleton(a));
+        assertTrue(affected.contains(b.getAbsoluteFile()));
+        assertTrue(affected.contains(c.getAbsoluteFile()));
+        assertFalse(affected.contains(m.getAbsoluteFile()));
+        assertEquals(1, graph.independentGroups(Arrays.asList(a, b, m)).size());
+    }
+
+    public void testIsExternalModule() {
+        assertTrue(DependencyGraph.isExternalModule("import { a } from './a';\n"));
+        assertTrue(DependencyGraph.isExternalModule("import a = require('./a');\n"));
+        assertTrue(DependencyGraph.isExternalModule("var a = `${1}`; export = a;\n"));
+        assertFalse(DependencyGraph.isExternalModule("module App { export var a = 1; }\n"));
+        assertFalse(DependencyGraph.isExternalModule("var a = `}\n export var b`;\n"));
+        assertFalse(DependencyGraph.isExternalModule("/* export */ var p = import('./a');\n"));
+    }
+
+    public void testIndependentGroups() throws Exception {
+        File typings = write("typings/g.d.ts", "declare var g: number;\n");
+        File a = write("app1/a.ts", "/// <reference path=\"../typings/g.d.ts\" />\nimport { b } from \"./b\";\nexport var a = b;\n");
+        File b = write("app1/b.ts", "export var b = 1;\n");
+        File c = write("app2/c.ts", "/// <reference path=\"../typings/g.d.ts\" />\nexport var c = g;\n");
+
+        DependencyGraph graph = new DependencyGraph("utf-8");
+        for (File file : new File[] { typings, a, b, c }) {
+            graph.update(file);
+        }
+        List<List<File>> groups = graph.independentGroups(Arrays.asList(a, b, c));
+        assertEquals(2, groups.size());
+        assertEquals(Arrays.asList(a, b), groups.get(0));
+        assertEquals(Arrays.asList(c), groups.get(1));
+
+        File script = write("app2/script.ts", "var s = 1;\n");
+        graph.update(script);
+        assertEquals(1, graph.independentGroups(Arrays.asList(a, b, c, script)).size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.ppedregal.typescript.maven;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DiagnosticCollectorTest extends TestCase {
+
+    public void testParse() {
+        Diagnostic diagnostic = Diagnostic.parse("src/a.ts(3,12): error TS2322: Type 'string' is not assignable to type 'number'.");
+        assertEquals("src/a.ts", diagnostic.getFile());
+        assertEquals(3, diagnostic.getLine());
+        assertEquals(12, diagnostic.getColumn());
+        assertEquals(2322, diagnostic.getCode());
+        assertTrue(diagnostic.isError());
+
+        Diagnostic global = Diagnostic.parse("error TS5023: Unknown compiler option 'foo'.");
+        assertNull(global.getFile());
+        assertEquals(5023, global.getCode());
+
+        assertNull(Diagnostic.parse("Version 1.7.5"));
+    }
+
+    public void testLimit() {
+        DiagnosticCollector collector = new DiagnosticCollector(2);
+        collector.addLine("a.ts(1,1): error TS2304: Cannot find name 'x'.");
+        collector.addLine("  Caused by something.");
+        collector.addLine("b.ts(2,1): error TS2304: Cannot find name 'y'.");
+        collector.addLine("b.ts(3,1): error TS2304: Cannot find name 'z'.");
+        collector.addLine("  Dropped with its diagnostic.");
+
+        List<Diagnostic> diagnostics = collector.getDiagnostics();
+        assertEquals(2, diagnostics.size());
+        assertEquals("Cannot find name 'x'.\n  Caused by something.", diagnostics.get(0).getMessage());
+        assertEquals(3, collector.getErrorCount());
+        assertEquals("3 error(s) and 0 warning(s) in 2 file(s), 1 more line(s) not shown", collector.getSummary());
+    }
+
+    public void testAddAll() {
+        DiagnosticCollector first = new DiagnosticCollector(1);
+        first.addLine("a.ts(1,1): error TS2304: Cannot find name 'x'.");
+        DiagnosticCollector second = new DiagnosticCollector(1);
+        second.addLine("b.ts(2,1): error TS2304: Cannot find name 'y'.");
+        second.addLine("c.ts(3,1): warning TS1234: Not kept.");
+        second.stop();
+
+        first.addAll(second);
+        assertEquals(1, first.getDiagnostics().size());
+        assertEquals(2, first.getErrorCount());
+        assertEquals(1, first.getWarningCount());
+        assertTrue(first.isStopped());
+    }
+}
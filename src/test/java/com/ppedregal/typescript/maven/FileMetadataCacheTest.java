@@ -0,0 +1,66 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+public class FileMetadataCacheTest extends TestCase {
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File("target/file-metadata-cache-test");
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+    }
+
+    public void testClearedBetweenCompiles() throws Exception {
+        File file = new File(dir, "a.ts");
+        FileMetadataCache cache = new FileMetadataCache();
+        assertFalse(cache.exists(file));
+
+        FileUtils.writeStringToFile(file, "var a = 1;\n", "utf-8");
+        assertFalse(cache.exists(file));
+        cache.clear();
+        assertTrue(cache.isFile(file));
+    }
+
+    public void testRetainedUntilInvalidated() throws Exception {
+        File file = new File(dir, "sub/a.ts");
+        FileMetadataCache cache = new FileMetadataCache();
+        cache.retain(dir);
+        assertFalse(cache.exists(file));
+        assertEquals(0, cache.list(dir).length);
+
+        FileUtils.writeStringToFile(file, "var a = 1;\n", "utf-8");
+        cache.clear();
+        assertFalse(cache.exists(file));
+
+        cache.invalidate(file);
+        assertTrue(cache.isFile(file));
+        assertEquals(1, cache.list(dir).length);
+    }
+
+    /**
+     * A file rewritten with the same length and timestamp right after it was
+     * looked at gets another stamp.
+     */
+    public void testStampOfRecentlyModifiedFile() throws Exception {
+        File file = new File(dir, "a.ts");
+        FileUtils.writeStringToFile(file, "var a = 1;\n", "utf-8");
+        long lastModified = file.lastModified();
+        FileMetadataCache cache = new FileMetadataCache();
+        String stamp = cache.stamp(file);
+
+        FileUtils.writeStringToFile(file, "var a = 2;\n", "utf-8");
+        file.setLastModified(lastModified);
+        cache.clear();
+        assertFalse(stamp.equals(cache.stamp(file)));
+
+        file.setLastModified(lastModified - 60000);
+        cache.clear();
+        assertEquals((lastModified - 60000) + ":11", cache.stamp(file));
+    }
+}
@@ -0,0 +1,93 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class OutputWriterTest extends TestCase {
+
+    private File dir;
+    private OutputWriter writer;
+    private TscHost host;
+
+    protected void setUp() throws Exception {
+        dir = new File("target/output-writer-test/" + getName());
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        writer = new OutputWriter(1);
+        host = new TscHost();
+        host.setWorkingDirectory(dir);
+        host.setOutputWriter(writer);
+        host.reset(Collections.<String>emptyList(), "utf-8");
+    }
+
+    protected void tearDown() {
+        writer.shutdown();
+    }
+
+    public void testFlushWaitsForWrites() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            host.writeFile("out" + i + ".js", "var a = " + i + ";\n", "utf-8");
+        }
+        host.writeFile("out0.js", "var a = 'last';\n", "utf-8");
+        Writer opened = host.open("opened.js", "utf-8");
+        opened.write("var o;\n");
+        opened.close();
+        host.flushOutputs();
+        assertEquals("var a = 99;\n", FileUtils.readFileToString(new File(dir, "out99.js"), "UTF-8"));
+        assertEquals("var a = 'last';\n", FileUtils.readFileToString(new File(dir, "out0.js"), "UTF-8"));
+        assertEquals("var o;\n", FileUtils.readFileToString(new File(dir, "opened.js"), "UTF-8"));
+    }
+
+    public void testWriterCreatesDirectories() throws Exception {
+        host.mkdir("sub");
+        host.mkdir("sub/dir");
+        host.mkdir("empty");
+        assertTrue(host.isDirectory("sub/dir"));
+        host.writeFile("sub/dir/out.js", "var a;\n", "utf-8");
+        host.flushOutputs();
+        assertTrue(new File(dir, "sub/dir/out.js").isFile());
+        assertTrue(new File(dir, "empty").isDirectory());
+    }
+
+    public void testFlushFailsWithWriteError() throws Exception {
+        FileUtils.writeStringToFile(new File(dir, "file"), "", "utf-8");
+        host.writeFile("file/out.js", "var a;\n", "utf-8");
+        try {
+            host.flushOutputs();
+            fail("write error not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Cannot write "));
+        }
+        host.flushOutputs();
+    }
+
+    /**
+     * Outputs that cannot be written fail the compile, whether they are
+     * written on the compiler thread or by an output writer.
+     */
+    public void testCompileFailsWithWriteError() throws Exception {
+        File source = new File("src/test/resources/testproject1/src/main/ts/simple_inheritance.ts");
+        File outDir = new File(dir, "out");
+        FileUtils.writeStringToFile(outDir, "", "utf-8");
+        RhinoTscSession session = new RhinoTscSession();
+        for (OutputWriter outputWriter : new OutputWriter[] { null, writer }) {
+            DiagnosticCollector diagnostics = new DiagnosticCollector(100);
+            session.setDiagnostics(diagnostics);
+            session.setOutputWriter(outputWriter);
+            try {
+                session.compile(Arrays.asList("--outDir", outDir.getPath(), source.getPath()), "utf-8");
+                fail("write error not reported");
+            } catch (TscInvocationException e) {
+                assertEquals(String.valueOf(diagnostics.getDiagnostics()),
+                        outputWriter == null ? 1 : 0, diagnostics.getErrorCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class ScopeSnapshotTest extends TestCase {
+
+    private static final String SOURCE = "src/test/resources/testproject1/src/main/ts/simple_inheritance.ts";
+
+    public void testRestoredSessionCompiles() throws Exception {
+        File cache = new File("target/scope-snapshot-test");
+        File target = new File("target/scope-snapshot-test-out");
+        FileUtils.deleteDirectory(cache);
+        FileUtils.deleteDirectory(target);
+
+        new RhinoTscSession(new ScriptClassCache(cache, -1));
+        assertEquals(1, cache.list().length);
+
+        RhinoTscSession restored = new RhinoTscSession(new ScriptClassCache(cache, -1));
+        restored.transpile(Arrays.asList("--module", "amd", "--outDir", target.getPath(), SOURCE), "utf-8");
+        assertTrue(new File(target, "simple_inheritance.js").exists());
+    }
+
+    /**
+     * A restored session type checks and emits like one that ran the scripts.
+     */
+    public void testRestoredSessionMatchesColdCompile() throws Exception {
+        File cache = new File("target/scope-snapshot-compile-test");
+        File sources = new File("target/scope-snapshot-compile-src");
+        FileUtils.deleteDirectory(cache);
+        FileUtils.deleteDirectory(sources);
+        FileUtils.copyFileToDirectory(new File(SOURCE), sources);
+        FileUtils.writeStringToFile(new File(sources, "error.ts"),
+                "class Zebra extends Animal {}\nvar zebra = new Zebra(\"z\");\nvar n: number = zebra.move;\n", "utf-8");
+
+        new RhinoTscSession(new ScriptClassCache(cache, -1));
+        assertEquals(1, cache.list().length);
+
+        File coldOut = new File("target/scope-snapshot-cold-out");
+        File restoredOut = new File("target/scope-snapshot-restored-out");
+        List<Diagnostic> cold = compile(new RhinoTscSession(new ScriptClassCache(null, -1)), sources, coldOut);
+        List<Diagnostic> restored = compile(new RhinoTscSession(new ScriptClassCache(cache, -1)), sources, restoredOut);
+
+        assertEquals(1, cold.size());
+        assertEquals(cold.toString(), restored.toString());
+        for (String name : new String[] { "simple_inheritance.js", "simple_inheritance.d.ts", "error.js" }) {
+            assertEquals(name, FileUtils.readFileToString(new File(coldOut, name), "utf-8"),
+                    FileUtils.readFileToString(new File(restoredOut, name), "utf-8"));
+        }
+    }
+
+    private static List<Diagnostic> compile(RhinoTscSession session, File sources, File target) throws Exception {
+        FileUtils.deleteDirectory(target);
+        DiagnosticCollector diagnostics = new DiagnosticCollector(100);
+        session.setDiagnostics(diagnostics);
+        List<String> args = new ArrayList<String>(Arrays.asList("--module", "amd", "--declaration",
+                "--outDir", target.getPath()));
+        for (String name : new String[] { "simple_inheritance.ts", "error.ts" }) {
+            args.add(new File(sources, name).getPath());
+        }
+        try {
+            session.compile(args, "utf-8");
+            fail("type error not reported");
+        } catch (TscInvocationException e) {
+            // exits with the status of a compile with errors
+        }
+        return diagnostics.getDiagnostics();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ppedregal.typescript.maven;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+import junit.framework.TestCase;
+
+public class TsConfigTest extends TestCase {
+
+    public void testInputFiles() throws Exception {
+        File root = new File("target/tsconfig-test").getAbsoluteFile();
+        FileUtils.deleteDirectory(root);
+        FileUtils.writeStringToFile(new File(root, "tsconfig.json"), "{\n"
+                + "  // comments are allowed\n"
+                + "  \"compilerOptions\": { \"outDir\": \"out\", /* emitted */ \"declaration\": true },\n"
+                + "  \"files\": [\"typings/x.d.ts\"],\n"
+                + "  \"include\": [\"src\"],\n"
+                + "  \"exclude\": [\"src/**/*.spec.ts\"]\n"
+                + "}\n", "UTF-8");
+        for (String name : Arrays.asList("typings/x.d.ts", "src/a.ts", "src/a.d.ts", "src/lib/b.tsx", "src/a.spec.ts", "other/c.ts")) {
+            FileUtils.writeStringToFile(new File(root, name), "", "UTF-8");
+        }
+
+        TsConfig config = TsConfig.read(root, "UTF-8");
+        assertEquals(Arrays.asList(new File(root, "typings/x.d.ts"), new File(root, "src/a.ts"), new File(root, "src/lib/b.tsx")),
+                config.getInputFiles());
+        assertEquals(new File(root, "out"), config.getOutDir());
+        assertNull(config.getOutFile());
+        assertTrue(config.isDeclaration());
+    }
+
+    public void testMayContainInputs() throws Exception {
+        File root = new File("target/tsconfig-dirs-test").getAbsoluteFile();
+        FileUtils.deleteDirectory(root);
+        FileUtils.writeStringToFile(new File(root, "tsconfig.json"), "{\n"
+                + "  \"compilerOptions\": { \"outDir\": \"target/ts\" },\n"
+                + "  \"files\": [\"typings/lib/x.d.ts\"],\n"
+                + "  \"include\": [\"src/main/**/*.ts\"]\n"
+                + "}\n", "UTF-8");
+        TsConfig config = TsConfig.read(root, "UTF-8");
+        for (String dir : Arrays.asList("", "src", "src/main", "src/main/app", "typings", "typings/lib")) {
+            assertTrue(dir, config.mayContainInputs(new File(root, dir)));
+        }
+        for (String dir : Arrays.asList("src/test", "typings/other", "node_modules", "target", "target/ts")) {
+            assertFalse(dir, config.mayContainInputs(new File(root, dir)));
+        }
+        assertFalse(config.mayContainInputs(root.getParentFile()));
+
+        FileUtils.writeStringToFile(new File(root, "tsconfig.json"), "{ \"compilerOptions\": { \"outDir\": \"target/ts\" } }", "UTF-8");
+        config = TsConfig.read(root, "UTF-8");
+        assertTrue(config.mayContainInputs(new File(root, "target")));
+        assertTrue(config.mayContainInputs(new File(root, "src/test")));
+        assertFalse(config.mayContainInputs(new File(root, "target/ts")));
+        assertFalse(config.mayContainInputs(new File(root, "node_modules")));
+    }
+
+    public void testStripComments() {
+        assertEquals("{\"a\": \"//not a comment\"  \n}", TsConfig.stripComments("{\"a\": \"//not a comment\" /* x */\n}"));
+    }
+}
@@ -1,22 +1,320 @@
 package com.ppedregal.typescript.maven;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 
 import junit.framework.TestCase;
 
 public class TscMojoTest extends TestCase {
 
+    private File project;
+
+    /**
+     * Copies the sources of testproject1 to a directory of this test below
+     * target, so the tests neither write into the source tree nor see each
+     * other's outputs.
+     */
+    protected void setUp() throws Exception {
+        project = new File("target/mojo-test/" + getName());
+        FileUtils.deleteDirectory(project);
+        FileUtils.copyDirectory(new File("src/test/resources/testproject1/src/main/ts"), sourceDirectory());
+    }
+
+    private File sourceDirectory() {
+        return new File(project, "src/main/ts");
+    }
+
+    private File targetDirectory() {
+        return new File(project, "target/ts");
+    }
+
+    private File file(String path) {
+        return new File(project, path);
+    }
+
+    /**
+     * @return a mojo compiling the copied sources to target/ts as AMD modules
+     */
+    private TscMojo newMojo() {
+        TscMojo mojo = new TscMojo();
+        mojo.setSourceDirectory(sourceDirectory());
+        mojo.setTargetDirectory(targetDirectory());
+        mojo.setModule("amd");
+        return mojo;
+    }
+
+    private String read(File file) throws IOException {
+        return FileUtils.readFileToString(file, "UTF-8");
+    }
+
 	/**
      * @throws Exception if any
      */
     public void testExecute()
         throws Exception
     {
-    	TscMojo mojo = new TscMojo();
-    	mojo.setSourceDirectory(new File("src/test/resources/testproject1/src/main/ts"));
-    	mojo.setTargetDirectory(new File("src/test/resources/testproject1/target/ts"));
-        mojo.setModule("amd");
+    	TscMojo mojo = newMojo();
     	mojo.execute();
+        assertTrue(new File(targetDirectory(), "simple_inheritance.js").exists());
+    }
+
+    /**
+     * A second execution of the same mojo compiles in the warm session.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteTwice()
+        throws Exception
+    {
+        TscMojo mojo = newMojo();
+        mojo.execute();
+        File js = new File(targetDirectory(), "simple_inheritance.js");
+        assertTrue(js.delete());
+        mojo.execute();
+        assertTrue(js.exists());
+    }
+
+    /**
+     * An execution with unchanged inputs and outputs skips the compile.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteUpToDate()
+        throws Exception
+    {
+        File manifest = file("target/ts-build.manifest");
+        TscMojo mojo = newMojo();
+        mojo.setBuildManifest(manifest);
+        mojo.execute();
+        assertTrue(manifest.exists());
+
+        File js = new File(targetDirectory(), "simple_inheritance.js");
+        long lastModified = js.lastModified();
+        mojo.execute();
+        assertEquals(lastModified, js.lastModified());
+
+        assertTrue(js.delete());
+        mojo.execute();
+        assertTrue(js.exists());
+    }
+
+    /**
+     * A declaration outside the sources, referenced through another one,
+     * outdates the manifest when it changes.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteUpstreamChanged()
+        throws Exception
+    {
+        File shape = file("typings/shape.d.ts");
+        FileUtils.writeStringToFile(shape, "interface Shape { area: number; }\n", "UTF-8");
+        FileUtils.writeStringToFile(file("typings/index.d.ts"), "/// <reference path=\"shape.d.ts\" />\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "square.ts"),
+                "/// <reference path=\"../../../typings/index.d.ts\" />\nvar square: Shape = { area: 4 };\n", "UTF-8");
+        File metrics = file("target/ts-build-metrics.json");
+        TscMojo mojo = newMojo();
+        mojo.setBuildManifest(file("target/ts-build.manifest"));
+        mojo.setMetricsFile(metrics);
+        mojo.execute();
+        assertTrue(metrics.delete());
+
+        mojo.execute();
+        assertFalse("compiled although up to date", metrics.exists());
+
+        FileUtils.writeStringToFile(shape, "interface Shape { area: number; name?: string; }\n", "UTF-8");
+        mojo.execute();
+        assertTrue("not compiled after an upstream change", metrics.exists());
+    }
+
+    /**
+     * @throws Exception if any
+     */
+    public void testExecuteMetrics()
+        throws Exception
+    {
+        File metrics = file("target/ts-build-metrics.json");
+        TscMojo mojo = newMojo();
+        mojo.setMetricsFile(metrics);
+        mojo.execute();
+        String json = read(metrics);
+        assertTrue(json, json.contains("\"compiles\": 1,"));
+
+        // the output is the same, so it is not written again
+        mojo.execute();
+        json = read(metrics);
+        assertTrue(json, json.contains("\"filesWritten\": 0,"));
+        assertTrue(json, json.contains("\"filesUnchanged\": 1,"));
+    }
+
+    /**
+     * @throws Exception if any
+     */
+    public void testExecuteTranspileOnly()
+        throws Exception
+    {
+        TscMojo mojo = newMojo();
+        mojo.setTranspileOnly(true);
+        mojo.execute();
+        assertTrue(new File(targetDirectory(), "simple_inheritance.js").exists());
+    }
+
+    /**
+     * A compile of the same inputs restores the outputs from the build cache.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteBuildCache()
+        throws Exception
+    {
+        File cache = file("build-cache");
+        File manifest = file("target/ts-build.manifest");
+        File metrics = file("target/ts-build-metrics.json");
+        TscMojo mojo = newMojo();
+        mojo.setBuildManifest(manifest);
+        mojo.setMetricsFile(metrics);
+        mojo.setBuildCache(cache);
+        mojo.setDeclaration(true);
+        mojo.execute();
+        assertEquals(1, cache.list().length);
+        // the fingerprint is published by the build restoring the outputs
+        List<String> names = new ArrayList<String>();
+        ZipFile entry = new ZipFile(cache.listFiles()[0]);
+        try {
+            for (ZipEntry zipEntry : Collections.list(entry.entries())) {
+                names.add(new File(zipEntry.getName()).getName());
+            }
+        } finally {
+            entry.close();
+        }
+        assertTrue(names.toString(), names.contains("simple_inheritance.d.ts"));
+        assertFalse(names.toString(), names.contains(DeclarationFingerprint.FILE_NAME));
+
+        FileUtils.deleteDirectory(targetDirectory());
+        manifest.delete();
+        mojo.execute();
+        assertTrue(new File(targetDirectory(), "simple_inheritance.js").exists());
+        assertTrue(new File(targetDirectory(), DeclarationFingerprint.FILE_NAME).exists());
+        String json = read(metrics);
+        assertTrue(json, json.contains("\"compiles\": 0,"));
+
+        // another encoding reads the sources differently
+        FileUtils.deleteDirectory(targetDirectory());
+        mojo.setEncoding("iso-8859-1");
+        mojo.execute();
+        assertEquals(2, cache.list().length);
     }
-	
+
+    /**
+     * A namespace spread over several files is compiled in one group.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteNamespaceInParallel()
+        throws Exception
+    {
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "a.ts"),
+                "module App {\n    export class A {}\n}\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "b.ts"),
+                "module App {\n    export class B extends A {}\n}\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "c.ts"),
+                "export var c = 1;\n", "UTF-8");
+        new File(sourceDirectory(), "simple_inheritance.ts").delete();
+        TscMojo mojo = newMojo();
+        mojo.setCompileThreads(2);
+        mojo.execute();
+        assertTrue(new File(targetDirectory(), "b.js").exists());
+    }
+
+    /**
+     * Independent modules are compiled in groups on several threads, each
+     * group with the global declarations it references, and the diagnostics
+     * of all groups are reported.
+     *
+     * @throws Exception if any
+     */
+    public void testExecuteGroupsInParallel()
+        throws Exception
+    {
+        new File(sourceDirectory(), "simple_inheritance.ts").delete();
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "globals.d.ts"),
+                "declare var shared: number;\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "a.ts"),
+                "/// <reference path=\"globals.d.ts\" />\nexport class A {\n    size = shared;\n}\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "sub/b.ts"),
+                "import a = require(\"../a\");\nexport class B extends a.A {}\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "c.ts"),
+                "/// <reference path=\"globals.d.ts\" />\nexport var c = shared + 1;\n", "UTF-8");
+        RecordingLog log = new RecordingLog();
+        TscMojo mojo = newMojo();
+        mojo.setLog(log);
+        mojo.setCompileThreads(2);
+        mojo.execute();
+        assertTrue(log.infos.toString(), log.infos.contains("Compiling 2 independent group(s) on 2 thread(s)"));
+        assertTrue(log.errors.toString(), log.errors.isEmpty());
+        for (String name : new String[] { "a.js", "sub/b.js", "c.js" }) {
+            assertTrue(name, new File(targetDirectory(), name).exists());
+        }
+        assertFalse(new File(targetDirectory(), "globals.js").exists());
+
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "sub/b.ts"),
+                "import a = require(\"../a\");\nexport var b: string = new a.A().size;\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory(), "c.ts"),
+                "/// <reference path=\"globals.d.ts\" />\nexport var c: string = shared;\n", "UTF-8");
+        log = new RecordingLog();
+        mojo.setLog(log);
+        try {
+            mojo.execute();
+            fail("type errors not reported");
+        } catch (MojoExecutionException e) {
+            // fails after the diagnostics of both groups
+        }
+        assertTrue(log.infos.toString(), log.infos.contains("Compiling 2 independent group(s) on 2 thread(s)"));
+        String errors = log.errors.toString();
+        assertTrue(errors, errors.contains("b.ts(2,"));
+        assertTrue(errors, errors.contains("c.ts(2,"));
+    }
+
+    /**
+     * Keeps the messages of a mojo.
+     */
+    private static class RecordingLog extends SystemStreamLog {
+        final List<String> infos = new ArrayList<String>();
+        final List<String> errors = new ArrayList<String>();
+
+        public void info(CharSequence content) {
+            infos.add(content.toString());
+            super.info(content);
+        }
+
+        public void error(CharSequence content) {
+            errors.add(content.toString());
+            super.error(content);
+        }
+    }
+
+    /**
+     * @throws Exception if any
+     */
+    public void testExecuteOptimized()
+        throws Exception
+    {
+        File cache = file("script-cache");
+        TscMojo mojo = newMojo();
+        mojo.setOptimizationLevel(9);
+        mojo.setScriptCacheDirectory(cache);
+        mojo.execute();
+        assertTrue(new File(targetDirectory(), "simple_inheritance.js").exists());
+        assertTrue(cache.list().length > 0);
+    }
+
 }